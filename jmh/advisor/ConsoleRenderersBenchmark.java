@@ -0,0 +1,79 @@
+package advisor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the console renderers for a result list, with the output discarded. The paginated view is fed
+ * a short next/next/prev session before leaving.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConsoleRenderersBenchmark {
+
+    private static final byte[] PAGINATED_SESSION = "next\nnext\nprev\nexit\n".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"20", "2000"})
+    int entries;
+
+    private List<Playlist> results;
+    private PrintStream originalOut;
+    private InputStream originalIn;
+
+    @Setup
+    public void setUp() {
+        results = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            results.add(new Playlist("Playlist " + i, SpotifyUrl.of("https://open.spotify.com/playlist/playlist" + i)));
+        }
+
+        originalOut = System.out;
+        originalIn = System.in;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @Setup(Level.Invocation)
+    public void feedPaginatedSession() {
+        System.setIn(new ByteArrayInputStream(PAGINATED_SESSION));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(originalOut);
+        System.setIn(originalIn);
+    }
+
+    @Benchmark
+    public void raw() {
+        new ConsoleShowResultsRaw().showResults(results);
+    }
+
+    @Benchmark
+    public void paginated() {
+        new ConsoleShowResultsPaginated(5).showResults(results);
+    }
+}
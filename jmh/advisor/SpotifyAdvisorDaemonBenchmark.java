@@ -0,0 +1,95 @@
+package advisor;
+
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the advisor daemon: many concurrent clients, each with its own session, requesting the
+ * JSON endpoints while the daemon talks to the local API stub. The stub latency stands in for the real
+ * API, so the numbers show how well the daemon overlaps upstream waits and shares its caches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(64)
+@Fork(1)
+public class SpotifyAdvisorDaemonBenchmark {
+
+    private static final int SESSIONS = 64;
+
+    @Param({"0", "50"})
+    int apiLatencyMillis;
+
+    private SpotifyApiStubServer stubServer;
+    private SpotifyAdvisorDaemon daemon;
+    private HttpClient client;
+    private String[] sessionIds;
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+        stubServer = new SpotifyApiStubServer(0, 200, apiLatencyMillis, 0);
+
+        SpotifyClientModel sharedModel = new SpotifyClientModel("benchmark-client-id", "benchmark-client-secret");
+        sharedModel.spotifyAccessServer = stubServer.getUrl();
+        sharedModel.spotifyApiServer = stubServer.getUrl();
+        sharedModel.tokenFile = null;
+        sharedModel.requestScheduler = new SpotifyRequestScheduler(1e9, Integer.MAX_VALUE, 0);
+
+        daemon = new SpotifyAdvisorDaemon(sharedModel, 0, false);
+        daemon.start();
+
+        client = HttpClient.newHttpClient();
+        sessionIds = new String[SESSIONS];
+        for (int i = 0; i < SESSIONS; i++) {
+            HttpResponse<String> session = client.send(HttpRequest.newBuilder(URI.create(daemon.getUrl() + "/callback?code=benchmark" + i)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            sessionIds[i] = JsonParser.parseString(session.body()).getAsJsonObject().get("session").getAsString();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        daemon.stop();
+        stubServer.stop();
+    }
+
+    @Benchmark
+    public int featured() throws IOException, InterruptedException {
+        return get("/featured");
+    }
+
+    @Benchmark
+    public int playlists() throws IOException, InterruptedException {
+        return get("/playlists?category=Category%20" + ThreadLocalRandom.current().nextInt(20));
+    }
+
+    private int get(String path) throws IOException, InterruptedException {
+        String sessionId = sessionIds[ThreadLocalRandom.current().nextInt(SESSIONS)];
+        HttpRequest request = HttpRequest.newBuilder(URI.create(daemon.getUrl() + path))
+                .header(SpotifyAdvisorDaemon.SESSION_HEADER, sessionId)
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+}
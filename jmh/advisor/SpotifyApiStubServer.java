@@ -0,0 +1,259 @@
+package advisor;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local stand-in for the Spotify accounts and Web API servers. It answers the token request and the
+ * browse endpoints the advisor uses with payloads shaped like recorded API responses, paged with
+ * offset/limit, after a configurable latency, and can answer every Nth request with a 429. Responses are
+ * gzipped for clients that send Accept-Encoding: gzip, and carry an ETag of their content; a request whose
+ * If-None-Match matches it is answered 304 without a body.
+ *
+ * Run it and point the advisor at it with "-access http://localhost:PORT -resource http://localhost:PORT".
+ */
+class SpotifyApiStubServer {
+
+    private static final int DEFAULT_LIMIT = 20;
+    private static final int MAX_LIMIT = 50;
+
+    static {
+        // The JDK server leaves Nagle's algorithm on, which holds back each response on a kept-alive
+        // connection until the client's delayed ack (about 40ms) and would hide any gain from reusing it
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private final int latencyMillis;
+    private final int throttleEvery;
+    private final AtomicLong requestCount = new AtomicLong();
+
+    private final List<String> categories = new ArrayList<>();
+    private final List<String> featuredPlaylists = new ArrayList<>();
+    private final List<String> newReleases = new ArrayList<>();
+    private final Map<String, List<String>> playlistsByCategory = new HashMap<>();
+
+    /**
+     * @param itemsPerListing number of categories, featured playlists, new releases and playlists per category
+     * @param throttleEvery answer every Nth API request with 429, or 0 to never throttle
+     */
+    SpotifyApiStubServer(int port, int itemsPerListing, int latencyMillis, int throttleEvery) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.throttleEvery = throttleEvery;
+
+        for (int i = 0; i < itemsPerListing; i++) {
+            String categoryId = "category" + i;
+            categories.add(recordedCategory(categoryId, "Category " + i));
+            featuredPlaylists.add(recordedPlaylist("featured" + i, "Featured playlist " + i));
+            newReleases.add(recordedAlbum("album" + i, "New album " + i, new String[]{"Artist " + (i % 17), "Artist " + (i % 5)}));
+
+            List<String> categoryPlaylists = new ArrayList<>();
+            for (int j = 0; j < itemsPerListing; j++) {
+                categoryPlaylists.add(recordedPlaylist(categoryId + "playlist" + j, "Category " + i + " playlist " + j));
+            }
+            playlistsByCategory.put(categoryId, categoryPlaylists);
+        }
+
+        executor = Executors.newCachedThreadPool(SpotifyClientModel.daemonThreadFactory("spotify-api-stub"));
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.setExecutor(executor);
+        server.createContext("/api/token", this::handleToken);
+        server.createContext("/v1/", this::handleApi);
+        server.start();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = 9090;
+        int items = 200;
+        int latency = 0;
+        int throttle = 0;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("-port")) {
+                port = Integer.parseInt(args[i + 1]);
+            }
+            if (args[i].equals("-items")) {
+                items = Integer.parseInt(args[i + 1]);
+            }
+            if (args[i].equals("-latency")) {
+                latency = Integer.parseInt(args[i + 1]);
+            }
+            if (args[i].equals("-throttle")) {
+                throttle = Integer.parseInt(args[i + 1]);
+            }
+        }
+
+        SpotifyApiStubServer stubServer = new SpotifyApiStubServer(port, items, latency, throttle);
+        System.out.println("Spotify API stub listening on " + stubServer.getUrl());
+    }
+
+    String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handleToken(HttpExchange exchange) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        send(exchange, 200, "{\"access_token\":\"stub-access-token\",\"token_type\":\"Bearer\",\"scope\":\"\","
+                + "\"expires_in\":3600,\"refresh_token\":\"stub-refresh-token\"}");
+    }
+
+    private void handleApi(HttpExchange exchange) throws IOException {
+        if (throttleEvery > 0 && requestCount.incrementAndGet() % throttleEvery == 0) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            send(exchange, 429, "{\"error\":{\"status\":429,\"message\":\"API rate limit exceeded\"}}");
+            return;
+        }
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        String path = exchange.getRequestURI().getPath();
+        Map<String, String> query = queryParams(exchange.getRequestURI().getRawQuery());
+        int offset = Integer.parseInt(query.getOrDefault("offset", "0"));
+        int limit = Math.min(MAX_LIMIT, Integer.parseInt(query.getOrDefault("limit", String.valueOf(DEFAULT_LIMIT))));
+
+        if (path.equals("/v1/browse/categories")) {
+            send(exchange, 200, "{\"categories\":" + pagingObject(path, categories, offset, limit) + "}");
+        } else if (path.equals("/v1/browse/featured-playlists")) {
+            send(exchange, 200, "{\"message\":\"Featured today\",\"playlists\":" + pagingObject(path, featuredPlaylists, offset, limit) + "}");
+        } else if (path.equals("/v1/browse/new-releases")) {
+            send(exchange, 200, "{\"albums\":" + pagingObject(path, newReleases, offset, limit) + "}");
+        } else if (path.startsWith("/v1/browse/categories/") && path.endsWith("/playlists")) {
+            String categoryId = path.substring("/v1/browse/categories/".length(), path.length() - "/playlists".length());
+            List<String> categoryPlaylists = playlistsByCategory.get(categoryId);
+            if (categoryPlaylists != null) {
+                send(exchange, 200, "{\"message\":\"Popular playlists\",\"playlists\":" + pagingObject(path, categoryPlaylists, offset, limit) + "}");
+            } else {
+                send(exchange, 404, "{\"error\":{\"status\":404,\"message\":\"Specified id doesn't exist\"}}");
+            }
+        } else {
+            send(exchange, 404, "{\"error\":{\"status\":404,\"message\":\"Service not found\"}}");
+        }
+    }
+
+    private String pagingObject(String path, List<String> items, int offset, int limit) {
+        StringBuilder json = new StringBuilder("{\"href\":\"").append(getUrl()).append(path).append("\",\"items\":[");
+        for (int i = offset; i < Math.min(items.size(), offset + limit); i++) {
+            if (i > offset) {
+                json.append(',');
+            }
+            json.append(items.get(i));
+        }
+        json.append("],\"limit\":").append(limit)
+                .append(",\"next\":").append((offset + limit < items.size()) ? "\"" + getUrl() + path + "?offset=" + (offset + limit) + "&limit=" + limit + "\"" : "null")
+                .append(",\"offset\":").append(offset)
+                .append(",\"previous\":null")
+                .append(",\"total\":").append(items.size())
+                .append('}');
+        return json.toString();
+    }
+
+    static String recordedCategory(String id, String name) {
+        return "{\"href\":\"https://api.spotify.com/v1/browse/categories/" + id + "\","
+                + "\"icons\":[{\"height\":274,\"url\":\"https://t.scdn.co/media/derived/" + id + ".jpg\",\"width\":274}],"
+                + "\"id\":\"" + id + "\",\"name\":\"" + name + "\"}";
+    }
+
+    static String recordedPlaylist(String id, String name) {
+        return "{\"collaborative\":false,\"description\":\"The best of " + name + ", updated weekly.\","
+                + "\"external_urls\":{\"spotify\":\"https://open.spotify.com/playlist/" + id + "\"},"
+                + "\"href\":\"https://api.spotify.com/v1/playlists/" + id + "\",\"id\":\"" + id + "\","
+                + "\"images\":[{\"height\":null,\"url\":\"https://i.scdn.co/image/" + id + "\",\"width\":null}],"
+                + "\"name\":\"" + name + "\","
+                + "\"owner\":{\"display_name\":\"Spotify\",\"external_urls\":{\"spotify\":\"https://open.spotify.com/user/spotify\"},"
+                + "\"href\":\"https://api.spotify.com/v1/users/spotify\",\"id\":\"spotify\",\"type\":\"user\",\"uri\":\"spotify:user:spotify\"},"
+                + "\"primary_color\":null,\"public\":null,\"snapshot_id\":\"MTYwMDAwMDAwMCwwMDAwMDAwMDAwMDAwMDAwMDAwMDAwMDAwMDAwMDAwMDAw\","
+                + "\"tracks\":{\"href\":\"https://api.spotify.com/v1/playlists/" + id + "/tracks\",\"total\":50},"
+                + "\"type\":\"playlist\",\"uri\":\"spotify:playlist:" + id + "\"}";
+    }
+
+    static String recordedAlbum(String id, String name, String[] artists) {
+        StringBuilder artistsJson = new StringBuilder("[");
+        for (int i = 0; i < artists.length; i++) {
+            String artistId = artists[i].replace(" ", "").toLowerCase();
+            if (i > 0) {
+                artistsJson.append(',');
+            }
+            artistsJson.append("{\"external_urls\":{\"spotify\":\"https://open.spotify.com/artist/").append(artistId).append("\"},")
+                    .append("\"href\":\"https://api.spotify.com/v1/artists/").append(artistId).append("\",")
+                    .append("\"id\":\"").append(artistId).append("\",\"name\":\"").append(artists[i]).append("\",")
+                    .append("\"type\":\"artist\",\"uri\":\"spotify:artist:").append(artistId).append("\"}");
+        }
+        artistsJson.append(']');
+
+        return "{\"album_type\":\"album\",\"artists\":" + artistsJson + ","
+                + "\"available_markets\":[\"AD\",\"AR\",\"AT\",\"AU\",\"BE\",\"BG\",\"BO\",\"BR\",\"CA\",\"CH\",\"CL\",\"CO\",\"CR\",\"CY\",\"CZ\",\"DE\"],"
+                + "\"external_urls\":{\"spotify\":\"https://open.spotify.com/album/" + id + "\"},"
+                + "\"href\":\"https://api.spotify.com/v1/albums/" + id + "\",\"id\":\"" + id + "\","
+                + "\"images\":[{\"height\":640,\"url\":\"https://i.scdn.co/image/" + id + "640\",\"width\":640},"
+                + "{\"height\":300,\"url\":\"https://i.scdn.co/image/" + id + "300\",\"width\":300}],"
+                + "\"name\":\"" + name + "\",\"release_date\":\"2020-05-29\",\"release_date_precision\":\"day\","
+                + "\"total_tracks\":12,\"type\":\"album\",\"uri\":\"spotify:album:" + id + "\"}";
+    }
+
+    private static Map<String, String> queryParams(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query != null) {
+            for (String param : query.split("&")) {
+                String[] entry = param.split("=", 2);
+                params.put(entry[0], (entry.length > 1) ? entry[1] : "");
+            }
+        }
+        return params;
+    }
+
+    private static void send(HttpExchange exchange, int statusCode, String body) throws IOException {
+        byte[] bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+        if (statusCode == 200) {
+            String eTag = "\"" + Integer.toHexString(Arrays.hashCode(bodyBytes)) + "\"";
+            exchange.getResponseHeaders().set("ETag", eTag);
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            if (ifNoneMatch != null && Arrays.asList(ifNoneMatch.split("\\s*,\\s*")).contains(eTag)) {
+                // Without a response body to close, the server only keeps the connection if the request body was read
+                exchange.getRequestBody().readAllBytes();
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(bodyBytes);
+            }
+            bodyBytes = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(statusCode, bodyBytes.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(bodyBytes);
+        }
+    }
+}
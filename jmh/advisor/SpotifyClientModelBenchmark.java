@@ -0,0 +1,106 @@
+package advisor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request, parse and assembly cost of the model's browse methods against the local API stub, the cost of
+ * revalidating a cached listing that the stub answers with 304, and the cost of a similar artists lookup.
+ * Run with the gc profiler (the jmh task enables it) to get allocation per operation as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpotifyClientModelBenchmark {
+
+    @Param({"20", "200"})
+    int itemsPerListing;
+
+    @Param({"false", "true"})
+    boolean allPages;
+
+    private SpotifyApiStubServer stubServer;
+    private SpotifyClientModel model;
+    private SpotifyClientModel revalidatingModel;
+
+    @Setup
+    public void setUp() throws IOException {
+        stubServer = new SpotifyApiStubServer(0, itemsPerListing, 0, 0);
+
+        model = new SpotifyClientModel("benchmark-client-id", "benchmark-client-secret");
+        model.spotifyAccessServer = stubServer.getUrl();
+        model.spotifyApiServer = stubServer.getUrl();
+        model.token = new SpotifyToken("stub-access-token", null, "", Long.MAX_VALUE);
+        model.authorized = true;
+        // Every call has to go through the request and parse path: nothing is cached and nothing is paced
+        model.cache = new SpotifyApiCache(0);
+        model.requestScheduler = new SpotifyRequestScheduler(1e9, Integer.MAX_VALUE, 0);
+
+        // Listings are kept with their ETag but no TTL, so every call is a conditional request
+        revalidatingModel = new SpotifyClientModel("benchmark-client-id", "benchmark-client-secret");
+        revalidatingModel.spotifyAccessServer = stubServer.getUrl();
+        revalidatingModel.spotifyApiServer = stubServer.getUrl();
+        revalidatingModel.token = model.token;
+        revalidatingModel.authorized = true;
+        revalidatingModel.cache = new SpotifyApiCache(1000);
+        revalidatingModel.requestScheduler = new SpotifyRequestScheduler(1e9, Integer.MAX_VALUE, 0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        stubServer.stop();
+    }
+
+    @Benchmark
+    public List<Category> getCategories() throws HttpRequestSpotifyApiException {
+        return model.getCategories(allPages);
+    }
+
+    @Benchmark
+    public List<Playlist> getFeaturedPlaylists() throws HttpRequestSpotifyApiException {
+        return model.getFeaturedPlaylists(allPages);
+    }
+
+    @Benchmark
+    public List<Album> getNewReleases() throws HttpRequestSpotifyApiException {
+        return model.getNewReleases(allPages);
+    }
+
+    @Benchmark
+    public List<Playlist> getPlaylists() throws HttpRequestSpotifyApiException {
+        return model.getPlaylists("Category 1", allPages);
+    }
+
+    /**
+     * After the first call every page is revalidated and answered 304, so nothing is parsed again.
+     */
+    @Benchmark
+    public List<Album> getNewReleasesRevalidated() throws HttpRequestSpotifyApiException {
+        return revalidatingModel.getNewReleases(allPages);
+    }
+
+    /**
+     * Only the first call fetches the new releases; after that this is a lookup in the artist graph.
+     */
+    @Benchmark
+    public ArtistGraph.Recommendations getSimilarArtists() throws HttpRequestSpotifyApiException {
+        return model.getSimilarArtists("Artist 1", allPages);
+    }
+}
@@ -0,0 +1,70 @@
+package advisor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request latency against the local API stub through the model's shared HTTP client, and through a new
+ * client per request, which is how every token and API request used to be sent. The stub speaks
+ * HTTP/1.1, so the difference is the connection setup (and client startup) the shared client saves.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpotifyHttpClientBenchmark {
+
+    @Param({"0", "20"})
+    int apiLatencyMillis;
+
+    private SpotifyApiStubServer stubServer;
+    private SpotifyClientModel model;
+    private HttpRequest categoriesRequest;
+
+    @Setup
+    public void setUp() throws IOException {
+        stubServer = new SpotifyApiStubServer(0, 20, apiLatencyMillis, 0);
+
+        model = new SpotifyClientModel("benchmark-client-id", "benchmark-client-secret");
+        categoriesRequest = HttpRequest.newBuilder()
+                .header("Authorization", "Bearer stub-access-token")
+                .uri(URI.create(stubServer.getUrl() + "/v1/browse/categories"))
+                .GET()
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        stubServer.stop();
+    }
+
+    @Benchmark
+    public String sharedClient() throws IOException, InterruptedException {
+        return model.getHttpClient().send(categoriesRequest, HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    @Benchmark
+    public String clientPerRequest() throws IOException, InterruptedException {
+        HttpClient client = HttpClient.newBuilder().build();
+        return client.send(categoriesRequest, HttpResponse.BodyHandlers.ofString()).body();
+    }
+}
@@ -0,0 +1,119 @@
+package advisor;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streaming parse of browse responses with SpotifyResponseParsers against parsing the same bytes into a
+ * JSON tree first and walking it, which is how the responses used to be read. Both sides build the same
+ * Album and Playlist objects from response bodies shaped like the recorded ones the API stub serves.
+ * Run with the gc profiler (the jmh task enables it) to compare allocation per response as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpotifyResponseParsersBenchmark {
+
+    @Param({"50", "1000"})
+    int itemsPerResponse;
+
+    private byte[] newReleasesBody;
+    private byte[] playlistsBody;
+
+    @Setup
+    public void setUp() {
+        List<String> albums = new ArrayList<>();
+        List<String> playlists = new ArrayList<>();
+        for (int i = 0; i < itemsPerResponse; i++) {
+            albums.add(SpotifyApiStubServer.recordedAlbum("album" + i, "New album " + i, new String[]{"Artist " + (i % 17), "Artist " + (i % 5)}));
+            playlists.add(SpotifyApiStubServer.recordedPlaylist("playlist" + i, "Playlist " + i));
+        }
+        newReleasesBody = recordedResponse("albums", albums);
+        playlistsBody = recordedResponse("playlists", playlists);
+    }
+
+    @Benchmark
+    public Page<Album> streamNewReleases() throws IOException, HttpRequestSpotifyApiException {
+        try (JsonReader reader = new JsonReader(open(newReleasesBody))) {
+            return SpotifyResponseParsers.readPage(reader, "albums", SpotifyResponseParsers::readAlbum);
+        }
+    }
+
+    @Benchmark
+    public List<Album> treeNewReleases() throws IOException {
+        try (Reader reader = open(newReleasesBody)) {
+            JsonObject albumsJson = JsonParser.parseReader(reader).getAsJsonObject().get("albums").getAsJsonObject();
+            List<Album> albums = new ArrayList<>();
+            for (JsonElement item : albumsJson.getAsJsonArray("items")) {
+                JsonObject albumJson = item.getAsJsonObject();
+                List<Artist> albumArtists = new ArrayList<>();
+                for (JsonElement artistJson : albumJson.getAsJsonArray("artists")) {
+                    albumArtists.add(Artist.of(artistJson.getAsJsonObject().get("id").getAsString(), artistJson.getAsJsonObject().get("name").getAsString()));
+                }
+                String albumUrl = albumJson.get("external_urls").getAsJsonObject().get("spotify").getAsString();
+                albums.add(new Album(albumJson.get("name").getAsString(), albumArtists, SpotifyUrl.of(albumUrl)));
+            }
+            return albums;
+        }
+    }
+
+    @Benchmark
+    public Page<Playlist> streamPlaylists() throws IOException, HttpRequestSpotifyApiException {
+        try (JsonReader reader = new JsonReader(open(playlistsBody))) {
+            return SpotifyResponseParsers.readPage(reader, "playlists", SpotifyResponseParsers::readPlaylist);
+        }
+    }
+
+    @Benchmark
+    public List<Playlist> treePlaylists() throws IOException {
+        try (Reader reader = open(playlistsBody)) {
+            JsonObject playlistsJson = JsonParser.parseReader(reader).getAsJsonObject().get("playlists").getAsJsonObject();
+            List<Playlist> playlists = new ArrayList<>();
+            for (JsonElement item : playlistsJson.getAsJsonArray("items")) {
+                String playlistName = item.getAsJsonObject().get("name").getAsString();
+                String playlistUrl = item.getAsJsonObject().get("external_urls").getAsJsonObject().get("spotify").getAsString();
+                playlists.add(new Playlist(playlistName, SpotifyUrl.of(playlistUrl)));
+            }
+            return playlists;
+        }
+    }
+
+    private static Reader open(byte[] body) {
+        return new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A single-page response carrying all items under pagingObjectName.
+     */
+    private static byte[] recordedResponse(String pagingObjectName, List<String> items) {
+        String href = "https://api.spotify.com/v1/browse/" + pagingObjectName;
+        return ("{\"" + pagingObjectName + "\":{\"href\":\"" + href + "\",\"items\":[" + String.join(",", items) + "],"
+                + "\"limit\":" + items.size() + ",\"next\":null,\"offset\":0,\"previous\":null,\"total\":" + items.size() + "}}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+}
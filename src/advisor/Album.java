@@ -0,0 +1,48 @@
+package advisor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A released album with its (interned) artists and url.
+ */
+final class Album {
+
+    final String name;
+    private final Artist[] artists;
+    final SpotifyUrl url;
+
+    Album(String name, List<Artist> artists, SpotifyUrl url) {
+        this.name = name;
+        this.artists = artists.toArray(new Artist[0]);
+        this.url = url;
+    }
+
+    List<Artist> getArtists() {
+        return Collections.unmodifiableList(Arrays.asList(artists));
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (! (other instanceof Album)) {
+            return false;
+        }
+        Album album = (Album) other;
+        return Objects.equals(name, album.name) && Arrays.equals(artists, album.artists) && Objects.equals(url, album.url);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, Arrays.hashCode(artists), url);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
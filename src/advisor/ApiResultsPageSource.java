@@ -0,0 +1,74 @@
+package advisor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntFunction;
+
+/**
+ * Entries backed by an API paging object. Only the API pages covering the requested range are fetched,
+ * the page following the last served range is loaded in the background while the current one is read,
+ * and just the few most recently used pages are kept, so memory stays flat for very long listings.
+ */
+class ApiResultsPageSource<T> implements ResultsPageSource {
+
+    private static final int RETAINED_PAGES = 4;
+
+    private final IntFunction<CompletableFuture<Page<T>>> pageLoader;
+    private final int pageSize;
+
+    private final Map<Integer, CompletableFuture<Page<T>>> pagesByOffset = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, CompletableFuture<Page<T>>> eldest) {
+            return size() > RETAINED_PAGES;
+        }
+    };
+
+    /**
+     * @param pageLoader loads the API page starting at the given offset, holding pageSize entries
+     */
+    ApiResultsPageSource(IntFunction<CompletableFuture<Page<T>>> pageLoader, int pageSize) {
+        this.pageLoader = pageLoader;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public int getTotalEntries() throws HttpRequestSpotifyApiException {
+        return SpotifyClientModel.await(getPage(0)).total;
+    }
+
+    @Override
+    public List<T> getEntries(int fromIndex, int toIndex) throws HttpRequestSpotifyApiException {
+        List<T> entries = new ArrayList<>(Math.max(toIndex - fromIndex, 0));
+        int index = fromIndex;
+        while (index < toIndex) {
+            int pageOffset = (index / pageSize) * pageSize;
+            Page<T> page = SpotifyClientModel.await(getPage(pageOffset));
+            int indexInPage = index - page.offset;
+            if (indexInPage < 0 || indexInPage >= page.items.size()) {
+                break;
+            }
+            int lastIndexInPage = Math.min(page.items.size(), toIndex - page.offset);
+            entries.addAll(page.items.subList(indexInPage, lastIndexInPage));
+            index = page.offset + lastIndexInPage;
+        }
+
+        // Warm the page the next range will most likely come from
+        int nextRangeEnd = toIndex + (toIndex - fromIndex) - 1;
+        if (nextRangeEnd >= toIndex && nextRangeEnd < SpotifyClientModel.await(getPage(0)).total) {
+            getPage((nextRangeEnd / pageSize) * pageSize);
+        }
+        return entries;
+    }
+
+    private synchronized CompletableFuture<Page<T>> getPage(int pageOffset) {
+        CompletableFuture<Page<T>> page = pagesByOffset.get(pageOffset);
+        if (page == null || page.isCompletedExceptionally()) {
+            page = pageLoader.apply(pageOffset);
+            pagesByOffset.put(pageOffset, page);
+        }
+        return page;
+    }
+}
@@ -0,0 +1,50 @@
+package advisor;
+
+import java.util.Objects;
+
+/**
+ * An album artist. Artists are interned, so the many albums of one artist share a single instance, and
+ * interned weakly, so an artist no album refers to anymore is not kept.
+ */
+final class Artist {
+
+    private static final WeakInterner<Artist> ARTISTS = new WeakInterner<>();
+
+    final String id;
+    final String name;
+
+    private Artist(String id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    static Artist of(String id, String name) {
+        if (id == null && name == null) {
+            return new Artist(null, null);
+        }
+        // A renamed artist is a different value, and gets an instance of its own
+        return ARTISTS.intern(new Artist(id, name));
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (! (other instanceof Artist)) {
+            return false;
+        }
+        Artist artist = (Artist) other;
+        return Objects.equals(id, artist.id) && Objects.equals(name, artist.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, name);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,342 @@
+package advisor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Artist co-occurrence graph over the albums the model has fetched: two artists are related as many
+ * times as they appear on the same album. Artists get dense int ids, and each artist's related artists
+ * are kept in an open-addressing int to int map, so neighbours are counted and ranked without boxing.
+ */
+class ArtistGraph {
+
+    /**
+     * Counts keyed by artist id, with linear probing over parallel key and value arrays.
+     */
+    static class IntIntMap {
+        private static final int EMPTY = -1;
+
+        private int[] keys;
+        private int[] values;
+        private int size;
+
+        IntIntMap() {
+            this(4);
+        }
+
+        IntIntMap(int expectedSize) {
+            int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+            keys = new int[capacity];
+            values = new int[capacity];
+            Arrays.fill(keys, EMPTY);
+        }
+
+        void add(int key, int delta) {
+            int slot = findSlot(keys, key);
+            if (keys[slot] == EMPTY) {
+                keys[slot] = key;
+                size++;
+                if (size * 2 > keys.length) {
+                    values[slot] = delta;
+                    grow();
+                    return;
+                }
+            }
+            values[slot] += delta;
+        }
+
+        void addAll(IntIntMap other) {
+            for (int slot = 0; slot < other.keys.length; slot++) {
+                if (other.keys[slot] != EMPTY) {
+                    add(other.keys[slot], other.values[slot]);
+                }
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * Up to limit keys with the highest counts, highest first and lowest key first among equal counts.
+         */
+        int[] topKeys(int limit) {
+            long[] ranked = new long[size];
+            int count = 0;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != EMPTY) {
+                    // Count in the high bits and the inverted key in the low bits, so one sort ranks both
+                    ranked[count++] = ((long) values[slot] << 32) | (Integer.MAX_VALUE - keys[slot]);
+                }
+            }
+            Arrays.sort(ranked);
+
+            int[] top = new int[Math.min(limit, count)];
+            for (int i = 0; i < top.length; i++) {
+                top[i] = Integer.MAX_VALUE - (int) ranked[count - 1 - i];
+            }
+            return top;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new int[oldKeys.length * 2];
+            values = new int[oldValues.length * 2];
+            Arrays.fill(keys, EMPTY);
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldKeys[slot] != EMPTY) {
+                    int newSlot = findSlot(keys, oldKeys[slot]);
+                    keys[newSlot] = oldKeys[slot];
+                    values[newSlot] = oldValues[slot];
+                }
+            }
+        }
+
+        private static int findSlot(int[] keys, int key) {
+            int mask = keys.length - 1;
+            int hash = key * 0x9E3779B9;
+            // Fold the high bits in, so every bit of the hash reaches the slot whatever the table size
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+
+    /**
+     * The related artists of an artist, most related first, and albums of those artists.
+     */
+    static class Recommendations {
+        final Artist artist;
+        final List<Artist> relatedArtists;
+        final List<Album> albums;
+
+        Recommendations(Artist artist, List<Artist> relatedArtists, List<Album> albums) {
+            this.artist = artist;
+            this.relatedArtists = relatedArtists;
+            this.albums = albums;
+        }
+    }
+
+    private final Map<String, Integer> artistIds = new HashMap<>();
+    private final Map<String, Integer> artistIdsByName = new HashMap<>();
+    private final List<Artist> artists = new ArrayList<>();
+    private final List<IntIntMap> relatedArtists = new ArrayList<>();
+    private final List<int[]> albumsByArtist = new ArrayList<>();
+
+    private final Map<Album, Integer> albumIds = new HashMap<>();
+    private final List<Album> albums = new ArrayList<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Adds the albums among items that are not in the graph yet.
+     */
+    void addAll(List<?> items) {
+        lock.writeLock().lock();
+        try {
+            for (Object item : items) {
+                if (item instanceof Album && ! albumIds.containsKey(item)) {
+                    int[] albumArtistIds = addAlbum((Album) item);
+                    countCoOccurrences(albumArtistIds, relatedArtists);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the albums that are not in the graph yet in bulk. The co-occurrences are counted on parallelism
+     * threads, each over a share of the albums into its own maps, and the partial maps are then merged per
+     * artist in parallel too.
+     */
+    void addAll(List<Album> newAlbums, int parallelism) throws InterruptedException {
+        lock.writeLock().lock();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism), SpotifyClientModel.daemonThreadFactory("artist-graph-build"));
+        try {
+            List<int[]> albumsArtistIds = new ArrayList<>(newAlbums.size());
+            for (Album album : newAlbums) {
+                if (! albumIds.containsKey(album)) {
+                    albumsArtistIds.add(addAlbum(album));
+                }
+            }
+
+            int workers = Math.max(1, Math.min(parallelism, albumsArtistIds.size()));
+            List<Future<List<IntIntMap>>> partialCounts = new ArrayList<>();
+            for (int worker = 0; worker < workers; worker++) {
+                List<int[]> share = albumsArtistIds.subList(albumsArtistIds.size() * worker / workers, albumsArtistIds.size() * (worker + 1) / workers);
+                partialCounts.add(executor.submit(() -> {
+                    List<IntIntMap> counts = new ArrayList<>();
+                    for (int[] albumArtistIds : share) {
+                        countCoOccurrences(albumArtistIds, counts);
+                    }
+                    return counts;
+                }));
+            }
+            List<List<IntIntMap>> partialMaps = new ArrayList<>();
+            for (Future<List<IntIntMap>> partialCount : partialCounts) {
+                partialMaps.add(partialCount.get());
+            }
+
+            int artistCount = artists.size();
+            List<Future<?>> merges = new ArrayList<>();
+            for (int worker = 0; worker < workers; worker++) {
+                int firstArtist = artistCount * worker / workers;
+                int lastArtist = artistCount * (worker + 1) / workers;
+                merges.add(executor.submit(() -> {
+                    for (int artistId = firstArtist; artistId < lastArtist; artistId++) {
+                        IntIntMap merged = relatedArtists.get(artistId);
+                        for (List<IntIntMap> counts : partialMaps) {
+                            if (artistId < counts.size() && counts.get(artistId) != null) {
+                                merged.addAll(counts.get(artistId));
+                            }
+                        }
+                    }
+                }));
+            }
+            for (Future<?> merge : merges) {
+                merge.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Building the artist graph failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Up to limit artists most often on the same albums as the artist named artistName, and up to limit of
+     * their albums that the artist is not on, or null when the artist is unknown.
+     */
+    Recommendations getRecommendations(String artistName, int limit) {
+        lock.readLock().lock();
+        try {
+            Integer artistId = artistIdsByName.get(normalize(artistName));
+            if (artistId == null) {
+                return null;
+            }
+
+            int[] topArtistIds = relatedArtists.get(artistId).topKeys(limit);
+            List<Artist> topArtists = new ArrayList<>(topArtistIds.length);
+            List<Album> topAlbums = new ArrayList<>();
+            for (int relatedArtistId : topArtistIds) {
+                topArtists.add(artists.get(relatedArtistId));
+            }
+            for (int relatedArtistId : topArtistIds) {
+                for (int albumId : albumsByArtist.get(relatedArtistId)) {
+                    Album album = albums.get(albumId);
+                    if (topAlbums.size() < limit && ! album.getArtists().contains(artists.get(artistId)) && ! topAlbums.contains(album)) {
+                        topAlbums.add(album);
+                    }
+                }
+            }
+            return new Recommendations(artists.get(artistId), topArtists, topAlbums);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return artists.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    String getStatsSummary() {
+        lock.readLock().lock();
+        try {
+            return "Artist graph: " + artists.size() + " artists, " + albums.size() + " albums";
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gives the album and its artists ids, and returns the distinct ids of its artists.
+     */
+    private int[] addAlbum(Album album) {
+        int albumId = albums.size();
+        albums.add(album);
+        albumIds.put(album, albumId);
+
+        List<Artist> albumArtists = album.getArtists();
+        int[] albumArtistIds = new int[albumArtists.size()];
+        int distinctArtists = 0;
+        for (Artist artist : albumArtists) {
+            int artistId = getArtistId(artist);
+            if (artistId >= 0 && ! contains(albumArtistIds, distinctArtists, artistId)) {
+                albumArtistIds[distinctArtists++] = artistId;
+                int[] artistAlbums = albumsByArtist.get(artistId);
+                int[] grownAlbums = Arrays.copyOf(artistAlbums, artistAlbums.length + 1);
+                grownAlbums[artistAlbums.length] = albumId;
+                albumsByArtist.set(artistId, grownAlbums);
+            }
+        }
+        return Arrays.copyOf(albumArtistIds, distinctArtists);
+    }
+
+    private int getArtistId(Artist artist) {
+        String key = (artist.id != null) ? artist.id : artist.name;
+        if (key == null) {
+            return -1;
+        }
+        Integer artistId = artistIds.get(key);
+        if (artistId == null) {
+            artistId = artists.size();
+            artistIds.put(key, artistId);
+            artists.add(artist);
+            relatedArtists.add(new IntIntMap());
+            albumsByArtist.add(new int[0]);
+            if (artist.name != null) {
+                artistIdsByName.putIfAbsent(normalize(artist.name), artistId);
+            }
+        }
+        return artistId;
+    }
+
+    private static void countCoOccurrences(int[] albumArtistIds, List<IntIntMap> counts) {
+        for (int artistId : albumArtistIds) {
+            while (counts.size() <= artistId) {
+                counts.add(null);
+            }
+            if (counts.get(artistId) == null) {
+                counts.set(artistId, new IntIntMap());
+            }
+            for (int otherArtistId : albumArtistIds) {
+                if (otherArtistId != artistId) {
+                    counts.get(artistId).add(otherArtistId, 1);
+                }
+            }
+        }
+    }
+
+    private static boolean contains(int[] values, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String normalize(String artistName) {
+        return artistName.trim().toLowerCase(Locale.ROOT);
+    }
+}
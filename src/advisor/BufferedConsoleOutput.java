@@ -0,0 +1,72 @@
+package advisor;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Console output buffered in a writer over an output stream, usually System.out.
+ */
+class BufferedConsoleOutput implements ConsoleOutput {
+
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream out;
+    private final Writer writer;
+    private final String lineSeparator = System.lineSeparator();
+    private boolean error;
+
+    BufferedConsoleOutput(OutputStream out) {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    BufferedConsoleOutput(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, Charset.defaultCharset()), bufferSize);
+    }
+
+    @Override
+    public void println(Object line) {
+        write(String.valueOf(line));
+        write(lineSeparator);
+    }
+
+    @Override
+    public void println() {
+        write(lineSeparator);
+    }
+
+    @Override
+    public void flush() {
+        if (error) {
+            return;
+        }
+        try {
+            writer.flush();
+            // A PrintStream, like System.out, swallows write errors and only reports them here
+            error = (out instanceof PrintStream) && ((PrintStream) out).checkError();
+        } catch (IOException e) {
+            error = true;
+        }
+    }
+
+    @Override
+    public boolean checkError() {
+        return error;
+    }
+
+    private void write(String text) {
+        if (error) {
+            return;
+        }
+        try {
+            writer.write(text);
+        } catch (IOException e) {
+            error = true;
+        }
+    }
+}
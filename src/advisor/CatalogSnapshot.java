@@ -0,0 +1,420 @@
+package advisor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Categories, featured playlists, new releases and category playlists saved to a binary file, so a new
+ * process has them before its first request. The file is memory-mapped and records are decoded only
+ * when an entry is read.
+ *
+ * Layout (big-endian ints): magic, version, flags (1 = all pages), then offset and count of each section:
+ * string offsets, string data (UTF-8), categories (id, name), playlists (name, url prefix, url id),
+ * albums (name, url prefix, url id, first artist, artist count), artists (id, name) and listings
+ * (key, first record, record count). Records are fixed width and refer to strings by index, -1 for none,
+ * so any record is found without scanning the file.
+ */
+class CatalogSnapshot {
+
+    private static final int MAGIC = 0x4D414443;
+    static final int VERSION = 1;
+    private static final int FLAG_ALL_PAGES = 1;
+
+    private static final int STRING_OFFSETS = 0;
+    private static final int STRING_DATA = 1;
+    private static final int CATEGORIES = 2;
+    private static final int PLAYLISTS = 3;
+    private static final int ALBUMS = 4;
+    private static final int ARTISTS = 5;
+    private static final int LISTINGS = 6;
+    private static final int SECTIONS = 7;
+    private static final int[] RECORD_INTS = {1, 0, 2, 3, 5, 2, 3};
+    private static final int HEADER_BYTES = 12 + SECTIONS * 8;
+
+    private static final String CATEGORIES_LISTING = "categories";
+    private static final String FEATURED_LISTING = "featured";
+    private static final String NEW_RELEASES_LISTING = "new";
+    private static final String PLAYLISTS_LISTING = "playlists/";
+
+    private final ByteBuffer buffer;
+    private final int[] sectionOffsets = new int[SECTIONS];
+    private final int[] sectionCounts = new int[SECTIONS];
+    private final Map<String, int[]> listings = new LinkedHashMap<>();
+    final boolean allPages;
+
+    private CatalogSnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a catalog snapshot");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported catalog snapshot version " + buffer.getInt(4));
+        }
+        allPages = (buffer.getInt(8) & FLAG_ALL_PAGES) != 0;
+
+        for (int section = 0; section < SECTIONS; section++) {
+            sectionOffsets[section] = buffer.getInt(12 + section * 8);
+            sectionCounts[section] = buffer.getInt(16 + section * 8);
+            long sectionBytes = (section == STRING_DATA) ? sectionCounts[section] : 4L * RECORD_INTS[section] * sectionCounts[section];
+            if (sectionOffsets[section] < HEADER_BYTES || sectionCounts[section] < 0 || sectionOffsets[section] + sectionBytes > buffer.limit()) {
+                throw new IOException("Corrupted catalog snapshot");
+            }
+        }
+
+        for (int listing = 0; listing < sectionCounts[LISTINGS]; listing++) {
+            int recordOffset = sectionOffsets[LISTINGS] + listing * 12;
+            listings.put(getString(buffer.getInt(recordOffset)), new int[]{buffer.getInt(recordOffset + 4), buffer.getInt(recordOffset + 8)});
+        }
+    }
+
+    /**
+     * Maps the snapshot file, or returns null when there is none.
+     */
+    static CatalogSnapshot load(Path snapshotFile) throws IOException {
+        if (! Files.exists(snapshotFile)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            return new CatalogSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    List<Category> getCategories() {
+        return getListing(CATEGORIES_LISTING, CATEGORIES, this::readCategory);
+    }
+
+    List<Playlist> getFeaturedPlaylists() {
+        return getListing(FEATURED_LISTING, PLAYLISTS, this::readPlaylist);
+    }
+
+    List<Album> getNewReleases() {
+        return getListing(NEW_RELEASES_LISTING, ALBUMS, this::readAlbum);
+    }
+
+    List<Playlist> getPlaylists(String categoryId) {
+        return getListing(PLAYLISTS_LISTING + categoryId, PLAYLISTS, this::readPlaylist);
+    }
+
+    /**
+     * Ids of the categories whose playlists are in the snapshot.
+     */
+    List<String> getPlaylistsCategoryIds() {
+        List<String> categoryIds = new ArrayList<>();
+        for (String listing : listings.keySet()) {
+            if (listing.startsWith(PLAYLISTS_LISTING)) {
+                categoryIds.add(listing.substring(PLAYLISTS_LISTING.length()));
+            }
+        }
+        return categoryIds;
+    }
+
+    private interface RecordReader<T> {
+        T read(int recordOffset);
+    }
+
+    private <T> List<T> getListing(String key, int section, RecordReader<T> recordReader) {
+        int[] listing = listings.get(key);
+        if (listing == null || listing[0] < 0 || listing[1] < 0 || listing[0] + listing[1] > sectionCounts[section]) {
+            return null;
+        }
+        int recordBytes = 4 * RECORD_INTS[section];
+        int firstRecordOffset = sectionOffsets[section] + listing[0] * recordBytes;
+        return new AbstractList<>() {
+            @Override
+            public T get(int index) {
+                if (index < 0 || index >= listing[1]) {
+                    throw new IndexOutOfBoundsException("Index " + index + " out of " + listing[1]);
+                }
+                return recordReader.read(firstRecordOffset + index * recordBytes);
+            }
+
+            @Override
+            public int size() {
+                return listing[1];
+            }
+        };
+    }
+
+    private Category readCategory(int recordOffset) {
+        return new Category(getString(buffer.getInt(recordOffset)), getString(buffer.getInt(recordOffset + 4)));
+    }
+
+    private Playlist readPlaylist(int recordOffset) {
+        return new Playlist(getString(buffer.getInt(recordOffset)), readUrl(recordOffset + 4));
+    }
+
+    private Album readAlbum(int recordOffset) {
+        int firstArtist = buffer.getInt(recordOffset + 12);
+        int artistCount = buffer.getInt(recordOffset + 16);
+        List<Artist> artists = new ArrayList<>(Math.max(0, artistCount));
+        for (int artist = firstArtist; artist < firstArtist + artistCount && artist < sectionCounts[ARTISTS]; artist++) {
+            int artistOffset = sectionOffsets[ARTISTS] + artist * 8;
+            artists.add(Artist.of(getString(buffer.getInt(artistOffset)), getString(buffer.getInt(artistOffset + 4))));
+        }
+        return new Album(getString(buffer.getInt(recordOffset)), artists, readUrl(recordOffset + 4));
+    }
+
+    private SpotifyUrl readUrl(int urlOffset) {
+        String prefix = getString(buffer.getInt(urlOffset));
+        String id = getString(buffer.getInt(urlOffset + 4));
+        return (prefix != null && id != null) ? SpotifyUrl.of(prefix, id) : null;
+    }
+
+    private String getString(int index) {
+        if (index < 0 || index >= sectionCounts[STRING_OFFSETS] - 1) {
+            return null;
+        }
+        int start = buffer.getInt(sectionOffsets[STRING_OFFSETS] + index * 4);
+        int end = buffer.getInt(sectionOffsets[STRING_OFFSETS] + index * 4 + 4);
+        if (start < 0 || end < start || end > sectionCounts[STRING_DATA]) {
+            return null;
+        }
+        byte[] bytes = new byte[end - start];
+        ByteBuffer stringData = buffer.duplicate();
+        stringData.position(sectionOffsets[STRING_DATA] + start);
+        stringData.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The latest listings the model fetched, to be written as a snapshot. Listings fetched with a different
+     * page mode than the ones held replace them all.
+     */
+    static class Builder {
+        private boolean allPages;
+        private List<Category> categories;
+        private List<Playlist> featuredPlaylists;
+        private List<Album> newReleases;
+        private final Map<String, List<Playlist>> playlistsByCategoryId = new LinkedHashMap<>();
+        private boolean changed;
+
+        synchronized void setCategories(List<Category> categories, boolean allPages) {
+            setAllPages(allPages);
+            this.categories = categories;
+            changed = true;
+        }
+
+        synchronized void setFeaturedPlaylists(List<Playlist> featuredPlaylists, boolean allPages) {
+            setAllPages(allPages);
+            this.featuredPlaylists = featuredPlaylists;
+            changed = true;
+        }
+
+        synchronized void setNewReleases(List<Album> newReleases, boolean allPages) {
+            setAllPages(allPages);
+            this.newReleases = newReleases;
+            changed = true;
+        }
+
+        synchronized void setPlaylists(String categoryId, List<Playlist> playlists, boolean allPages) {
+            setAllPages(allPages);
+            playlistsByCategoryId.put(categoryId, playlists);
+            changed = true;
+        }
+
+        /**
+         * Adds the listings of a loaded snapshot that were not fetched since; they are not written back until
+         * something changes. Listings held in the other page mode are newer, and the snapshot is skipped.
+         */
+        synchronized void addAll(CatalogSnapshot snapshot) {
+            boolean empty = categories == null && featuredPlaylists == null && newReleases == null && playlistsByCategoryId.isEmpty();
+            if (! empty && allPages != snapshot.allPages) {
+                return;
+            }
+            allPages = snapshot.allPages;
+            if (categories == null) {
+                categories = snapshot.getCategories();
+            }
+            if (featuredPlaylists == null) {
+                featuredPlaylists = snapshot.getFeaturedPlaylists();
+            }
+            if (newReleases == null) {
+                newReleases = snapshot.getNewReleases();
+            }
+            for (String categoryId : snapshot.getPlaylistsCategoryIds()) {
+                playlistsByCategoryId.computeIfAbsent(categoryId, snapshot::getPlaylists);
+            }
+        }
+
+        private void setAllPages(boolean allPages) {
+            if (this.allPages != allPages) {
+                this.allPages = allPages;
+                categories = null;
+                featuredPlaylists = null;
+                newReleases = null;
+                playlistsByCategoryId.clear();
+            }
+        }
+
+        /**
+         * Writes the snapshot when anything changed since the last write, replacing snapshotFile atomically.
+         */
+        synchronized void write(Path snapshotFile) throws IOException {
+            if (! changed) {
+                return;
+            }
+            byte[] snapshot = encode();
+
+            if (snapshotFile.getParent() != null) {
+                Files.createDirectories(snapshotFile.getParent());
+            }
+            Path temporaryFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+            Files.write(temporaryFile, snapshot);
+            Files.move(temporaryFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            changed = false;
+        }
+
+        private byte[] encode() throws IOException {
+            StringTable strings = new StringTable();
+            RecordWriter[] sections = new RecordWriter[SECTIONS];
+            for (int section = CATEGORIES; section < SECTIONS; section++) {
+                sections[section] = new RecordWriter();
+            }
+
+            if (categories != null) {
+                sections[LISTINGS].writeRecord(strings.indexOf(CATEGORIES_LISTING), sections[CATEGORIES].count, categories.size());
+                for (Category category : categories) {
+                    sections[CATEGORIES].writeRecord(strings.indexOf(category.id), strings.indexOf(category.name));
+                }
+            }
+            if (featuredPlaylists != null) {
+                writePlaylists(FEATURED_LISTING, featuredPlaylists, sections, strings);
+            }
+            for (Map.Entry<String, List<Playlist>> categoryPlaylists : playlistsByCategoryId.entrySet()) {
+                writePlaylists(PLAYLISTS_LISTING + categoryPlaylists.getKey(), categoryPlaylists.getValue(), sections, strings);
+            }
+            if (newReleases != null) {
+                sections[LISTINGS].writeRecord(strings.indexOf(NEW_RELEASES_LISTING), sections[ALBUMS].count, newReleases.size());
+                for (Album album : newReleases) {
+                    List<Artist> artists = album.getArtists();
+                    sections[ALBUMS].writeRecord(strings.indexOf(album.name), strings.indexOf(urlPrefix(album.url)), strings.indexOf(urlId(album.url)),
+                            sections[ARTISTS].count, artists.size());
+                    for (Artist artist : artists) {
+                        sections[ARTISTS].writeRecord(strings.indexOf(artist.id), strings.indexOf(artist.name));
+                    }
+                }
+            }
+
+            byte[][] sectionBytes = new byte[SECTIONS][];
+            int[] sectionCounts = new int[SECTIONS];
+            sectionBytes[STRING_OFFSETS] = strings.getOffsets();
+            sectionCounts[STRING_OFFSETS] = strings.size() + 1;
+            sectionBytes[STRING_DATA] = strings.getData();
+            sectionCounts[STRING_DATA] = sectionBytes[STRING_DATA].length;
+            for (int section = CATEGORIES; section < SECTIONS; section++) {
+                sectionBytes[section] = sections[section].toByteArray();
+                sectionCounts[section] = sections[section].count;
+            }
+
+            ByteArrayOutputStream snapshotBytes = new ByteArrayOutputStream();
+            DataOutputStream snapshot = new DataOutputStream(snapshotBytes);
+            snapshot.writeInt(MAGIC);
+            snapshot.writeInt(VERSION);
+            snapshot.writeInt(allPages ? FLAG_ALL_PAGES : 0);
+            int sectionOffset = HEADER_BYTES;
+            for (int section = 0; section < SECTIONS; section++) {
+                snapshot.writeInt(sectionOffset);
+                snapshot.writeInt(sectionCounts[section]);
+                sectionOffset += sectionBytes[section].length;
+            }
+            for (byte[] section : sectionBytes) {
+                snapshot.write(section);
+            }
+            snapshot.flush();
+            return snapshotBytes.toByteArray();
+        }
+
+        private static void writePlaylists(String listingKey, List<Playlist> playlists, RecordWriter[] sections, StringTable strings) throws IOException {
+            sections[LISTINGS].writeRecord(strings.indexOf(listingKey), sections[PLAYLISTS].count, playlists.size());
+            for (Playlist playlist : playlists) {
+                sections[PLAYLISTS].writeRecord(strings.indexOf(playlist.name), strings.indexOf(urlPrefix(playlist.url)), strings.indexOf(urlId(playlist.url)));
+            }
+        }
+
+        private static String urlPrefix(SpotifyUrl url) {
+            return (url != null) ? url.prefix : null;
+        }
+
+        private static String urlId(SpotifyUrl url) {
+            return (url != null) ? url.id : null;
+        }
+    }
+
+    /**
+     * Strings written once each, in the order first seen, with the offset each one starts at.
+     */
+    private static class StringTable {
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        private final RecordWriter offsets = new RecordWriter();
+
+        int indexOf(String string) throws IOException {
+            if (string == null) {
+                return -1;
+            }
+            Integer index = indexes.get(string);
+            if (index == null) {
+                index = indexes.size();
+                indexes.put(string, index);
+                offsets.writeRecord(data.size());
+                data.write(string.getBytes(StandardCharsets.UTF_8));
+            }
+            return index;
+        }
+
+        int size() {
+            return indexes.size();
+        }
+
+        /**
+         * The start offset of every string, followed by the end of the last one.
+         */
+        byte[] getOffsets() throws IOException {
+            RecordWriter allOffsets = new RecordWriter();
+            allOffsets.write(offsets.toByteArray());
+            allOffsets.writeRecord(data.size());
+            return allOffsets.toByteArray();
+        }
+
+        byte[] getData() {
+            return data.toByteArray();
+        }
+    }
+
+    /**
+     * Fixed-width records of big-endian ints.
+     */
+    private static class RecordWriter extends DataOutputStream {
+        int count;
+
+        RecordWriter() {
+            super(new ByteArrayOutputStream());
+        }
+
+        void writeRecord(int... fields) throws IOException {
+            for (int field : fields) {
+                writeInt(field);
+            }
+            count++;
+        }
+
+        byte[] toByteArray() {
+            return ((ByteArrayOutputStream) out).toByteArray();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package advisor;
+
+import java.util.Objects;
+
+/**
+ * A browse category: the name shown to the user and the id the API addresses it by.
+ */
+final class Category {
+
+    final String id;
+    final String name;
+
+    Category(String id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (! (other instanceof Category)) {
+            return false;
+        }
+        Category category = (Category) other;
+        return Objects.equals(id, category.id) && Objects.equals(name, category.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, name);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,31 @@
+package advisor;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Case-insensitive category name to id index. It is fed by every categories response the model parses and
+ * outlives the response cache, so resolving a known category never needs a request of its own.
+ */
+class CategoryIndex {
+
+    private final Map<String, String> idsByName = new ConcurrentHashMap<>();
+
+    void update(List<Category> categories) {
+        for (Category category : categories) {
+            if (category.name != null && category.id != null) {
+                idsByName.put(normalize(category.name), category.id);
+            }
+        }
+    }
+
+    String getId(String categoryName) {
+        return idsByName.get(normalize(categoryName));
+    }
+
+    private static String normalize(String categoryName) {
+        return categoryName.trim().toLowerCase(Locale.ROOT);
+    }
+}
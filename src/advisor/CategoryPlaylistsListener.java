@@ -0,0 +1,9 @@
+package advisor;
+
+import java.util.List;
+
+interface CategoryPlaylistsListener {
+    void onPlaylists(Category category, List<Playlist> playlists);
+
+    void onError(Category category, String errorMessage);
+}
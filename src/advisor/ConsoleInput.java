@@ -0,0 +1,42 @@
+package advisor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+
+/**
+ * The one reader of the console input, shared by the command loop and the paginated view. A line read
+ * by the view that is not a paging command is handed back, so the command loop gets it next.
+ */
+class ConsoleInput {
+
+    private final BufferedReader reader;
+    private String unreadLine;
+
+    ConsoleInput(InputStream in) {
+        this.reader = new BufferedReader(new InputStreamReader(in, Charset.defaultCharset()));
+    }
+
+    /**
+     * Returns the next line, or null at the end of the input.
+     */
+    synchronized String readLine() {
+        if (unreadLine != null) {
+            String line = unreadLine;
+            unreadLine = null;
+            return line;
+        }
+        try {
+            return reader.readLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    synchronized void unread(String line) {
+        unreadLine = line;
+    }
+}
@@ -0,0 +1,20 @@
+package advisor;
+
+/**
+ * Where the console views write their results. Lines are written to a buffer and only reach the
+ * underlying stream when the buffer fills up or the view flushes, once per result set or page.
+ * Outputs are not thread-safe; the views write to them from one thread at a time.
+ */
+interface ConsoleOutput {
+
+    void println(Object line);
+
+    void println();
+
+    void flush();
+
+    /**
+     * True once a write failed, e.g. because the reading end of a pipe was closed. Later writes are dropped.
+     */
+    boolean checkError();
+}
@@ -0,0 +1,60 @@
+package advisor;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adds the number of bytes read through it to a counter, and keeps the time spent in reads of the stream
+ * it wraps. Over a decoded response body that is the time spent decoding, which the caller can tell apart
+ * from the time spent on what it does with the bytes.
+ */
+class CountingInputStream extends FilterInputStream {
+
+    private final LongAdder bytesRead;
+    private long readNanos;
+
+    CountingInputStream(InputStream in, LongAdder bytesRead) {
+        super(in);
+        this.bytesRead = bytesRead;
+    }
+
+    @Override
+    public int read() throws IOException {
+        long readStartNanos = System.nanoTime();
+        int b = super.read();
+        readNanos += System.nanoTime() - readStartNanos;
+        if (b >= 0) {
+            bytesRead.increment();
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        long readStartNanos = System.nanoTime();
+        int count = super.read(buffer, offset, length);
+        readNanos += System.nanoTime() - readStartNanos;
+        if (count > 0) {
+            bytesRead.add(count);
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long readStartNanos = System.nanoTime();
+        long skipped = super.skip(n);
+        readNanos += System.nanoTime() - readStartNanos;
+        bytesRead.add(skipped);
+        return skipped;
+    }
+
+    /**
+     * Time spent in reads so far.
+     */
+    long getReadNanos() {
+        return readNanos;
+    }
+}
@@ -0,0 +1,9 @@
+package advisor;
+
+class HttpRequestSpotifyApiException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    public HttpRequestSpotifyApiException(String errorMessage) {
+        super(errorMessage);
+    }
+}
@@ -0,0 +1,25 @@
+package advisor;
+
+import java.util.List;
+
+/**
+ * Entries of a result list already held in memory.
+ */
+class ListResultsPageSource implements ResultsPageSource {
+
+    private final List<?> entries;
+
+    ListResultsPageSource(List<?> entries) {
+        this.entries = entries;
+    }
+
+    @Override
+    public int getTotalEntries() {
+        return entries.size();
+    }
+
+    @Override
+    public List<?> getEntries(int fromIndex, int toIndex) {
+        return entries.subList(Math.min(fromIndex, entries.size()), Math.min(toIndex, entries.size()));
+    }
+}
@@ -0,0 +1,21 @@
+package advisor;
+
+import java.util.List;
+
+/**
+ * One page of a Spotify paging object: the parsed items plus the offset, limit and total the API reported.
+ */
+class Page<T> {
+
+    final List<T> items;
+    final int offset;
+    final int limit;
+    final int total;
+
+    Page(List<T> items, int offset, int limit, int total) {
+        this.items = items;
+        this.offset = offset;
+        this.limit = limit;
+        this.total = total;
+    }
+}
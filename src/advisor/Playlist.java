@@ -0,0 +1,39 @@
+package advisor;
+
+import java.util.Objects;
+
+/**
+ * A playlist as listed by the browse endpoints: its name and the url it opens at.
+ */
+final class Playlist {
+
+    final String name;
+    final SpotifyUrl url;
+
+    Playlist(String name, SpotifyUrl url) {
+        this.name = name;
+        this.url = url;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (! (other instanceof Playlist)) {
+            return false;
+        }
+        Playlist playlist = (Playlist) other;
+        return Objects.equals(name, playlist.name) && Objects.equals(url, playlist.url);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, url);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
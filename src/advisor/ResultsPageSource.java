@@ -0,0 +1,14 @@
+package advisor;
+
+import java.util.List;
+
+/**
+ * Entries the console views pull from, a range at a time, instead of receiving the whole result list.
+ * Entries are the domain objects themselves; the views format them as they print them.
+ */
+interface ResultsPageSource {
+
+    int getTotalEntries() throws HttpRequestSpotifyApiException;
+
+    List<?> getEntries(int fromIndex, int toIndex) throws HttpRequestSpotifyApiException;
+}
@@ -0,0 +1,316 @@
+package advisor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted index over every category, playlist and album the model has fetched, for answering searches
+ * without a request. Names (and album artists) are split into lowercase words; each word maps to the
+ * ascending ids of the documents containing it, stored in a plain int array. Every search term matches
+ * the words it is a prefix of, and results are ranked by how many of the terms they match.
+ */
+class SearchIndex {
+
+    /**
+     * Growable list of ascending document ids.
+     */
+    private static class PostingList {
+        private int[] documentIds = new int[4];
+        private int size;
+
+        void add(int documentId) {
+            if (size > 0 && documentIds[size - 1] == documentId) {
+                return;
+            }
+            if (size == documentIds.length) {
+                documentIds = Arrays.copyOf(documentIds, size * 2);
+            }
+            documentIds[size++] = documentId;
+        }
+    }
+
+    /**
+     * Per-query working memory, reused across queries so a search allocates nothing in proportion to the
+     * index. lastTerm holds, per document, the serial number of the last term that matched it: a document
+     * whose serial predates the current query has not been touched by it yet, so nothing is ever cleared.
+     */
+    private static class SearchScratch {
+        int[] lastTerm = new int[0];
+        int[] matchedTerms = new int[0];
+        int[] touched = new int[16];
+        int termSerial;
+
+        void ensureCapacity(int documentCount, int termCount) {
+            if (lastTerm.length < documentCount) {
+                int capacity = Math.max(documentCount, lastTerm.length * 2);
+                lastTerm = Arrays.copyOf(lastTerm, capacity);
+                matchedTerms = Arrays.copyOf(matchedTerms, capacity);
+            }
+            if (termSerial > Integer.MAX_VALUE - termCount - 1) {
+                Arrays.fill(lastTerm, 0);
+                termSerial = 0;
+            }
+        }
+    }
+
+    private final Queue<SearchScratch> searchScratches = new ConcurrentLinkedQueue<>();
+
+    private final List<Object> documents = new ArrayList<>();
+    private final Map<Object, Integer> documentIds = new HashMap<>();
+    private final NavigableMap<String, PostingList> postingsByWord = new TreeMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Adds the categories, playlists and albums among items; anything else, and items already indexed, is skipped.
+     */
+    void addAll(List<?> items) {
+        lock.writeLock().lock();
+        try {
+            for (Object item : items) {
+                String text = getIndexedText(item);
+                if (text == null || documentIds.containsKey(item)) {
+                    continue;
+                }
+                int documentId = documents.size();
+                documents.add(item);
+                documentIds.put(item, documentId);
+                for (String word : tokenize(text)) {
+                    postingsByWord.computeIfAbsent(word, key -> new PostingList()).add(documentId);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns up to limit documents matching at least one of the query terms, those matching the most terms first
+     * and in the order they were indexed otherwise. Only the posting lists of the matched words are visited, so a
+     * query costs in proportion to its matches, not to the size of the index.
+     */
+    List<Object> search(String query, int limit) {
+        Set<String> terms = tokenize(query);
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        SearchScratch scratch = searchScratches.poll();
+        if (scratch == null) {
+            scratch = new SearchScratch();
+        }
+        lock.readLock().lock();
+        try {
+            scratch.ensureCapacity(documents.size(), terms.size());
+            int[] lastTerm = scratch.lastTerm;
+            int[] matchedTerms = scratch.matchedTerms;
+            int firstTermSerial = scratch.termSerial + 1;
+            List<Collection<PostingList>> termPostings = new ArrayList<>(terms.size());
+            long postingCount = 0;
+            for (String term : terms) {
+                Collection<PostingList> matchedPostings = postingsByWord.subMap(term, true, term + Character.MAX_VALUE, false).values();
+                termPostings.add(matchedPostings);
+                for (PostingList postings : matchedPostings) {
+                    postingCount += postings.size;
+                }
+            }
+            // A query matching a large share of the index is ranked by scanning ids, not its touched list
+            boolean dense = postingCount > documents.size() / 4;
+
+            int touchedCount = 0;
+            for (Collection<PostingList> matchedPostings : termPostings) {
+                int termSerial = ++scratch.termSerial;
+                for (PostingList postings : matchedPostings) {
+                    for (int i = 0; i < postings.size; i++) {
+                        int documentId = postings.documentIds[i];
+                        int previousTerm = lastTerm[documentId];
+                        // A term counts once per document, even when it prefixes several of its words
+                        if (previousTerm == termSerial) {
+                            continue;
+                        }
+                        lastTerm[documentId] = termSerial;
+                        if (previousTerm >= firstTermSerial) {
+                            matchedTerms[documentId]++;
+                            continue;
+                        }
+                        matchedTerms[documentId] = 1;
+                        if (! dense) {
+                            if (touchedCount == scratch.touched.length) {
+                                scratch.touched = Arrays.copyOf(scratch.touched, touchedCount * 2);
+                            }
+                            scratch.touched[touchedCount++] = documentId;
+                        }
+                    }
+                }
+            }
+
+            long[] best = dense
+                    ? selectInIdOrder(scratch, firstTermSerial, terms.size(), limit)
+                    : selectFromTouched(scratch, touchedCount, terms.size(), limit);
+
+            List<Object> results = new ArrayList<>(best.length);
+            for (long rank : best) {
+                results.add(documents.get((int) rank));
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+            searchScratches.offer(scratch);
+        }
+    }
+
+    /**
+     * Ranks of the best limit of the touched documents, for queries matching a small share of the index:
+     * they are kept in a max-heap of (missed terms, id) packed into longs.
+     */
+    private static long[] selectFromTouched(SearchScratch scratch, int touchedCount, int termCount, int limit) {
+        long[] best = new long[Math.min(limit, touchedCount)];
+        int bestCount = 0;
+        for (int i = 0; i < touchedCount; i++) {
+            int documentId = scratch.touched[i];
+            long rank = ((long) (termCount - scratch.matchedTerms[documentId]) << 32) | documentId;
+            if (bestCount < best.length) {
+                best[bestCount++] = rank;
+                siftUp(best, bestCount - 1);
+            } else if (rank < best[0]) {
+                best[0] = rank;
+                siftDown(best, bestCount);
+            }
+        }
+        Arrays.sort(best);
+        return best;
+    }
+
+    /**
+     * Ranks of the best limit of the touched documents, for queries matching a large share of the index:
+     * ids are scanned in order, so each score keeps its first limit documents, and the scan stops once
+     * limit documents match every term.
+     */
+    private long[] selectInIdOrder(SearchScratch scratch, int firstTermSerial, int termCount, int limit) {
+        long[][] ranksByMissedTerms = new long[termCount][];
+        int[] rankCounts = new int[termCount];
+        for (int documentId = 0; documentId < documents.size() && rankCounts[0] < limit; documentId++) {
+            if (scratch.lastTerm[documentId] < firstTermSerial) {
+                continue;
+            }
+            int missedTerms = termCount - scratch.matchedTerms[documentId];
+            if (rankCounts[missedTerms] < limit) {
+                if (ranksByMissedTerms[missedTerms] == null) {
+                    ranksByMissedTerms[missedTerms] = new long[Math.min(limit, 16)];
+                } else if (rankCounts[missedTerms] == ranksByMissedTerms[missedTerms].length) {
+                    ranksByMissedTerms[missedTerms] = Arrays.copyOf(ranksByMissedTerms[missedTerms], (int) Math.min(limit, 2L * rankCounts[missedTerms]));
+                }
+                ranksByMissedTerms[missedTerms][rankCounts[missedTerms]++] = documentId;
+            }
+        }
+
+        long[] best = new long[0];
+        for (int missedTerms = 0; missedTerms < termCount && best.length < limit; missedTerms++) {
+            int taken = Math.min(rankCounts[missedTerms], limit - best.length);
+            best = Arrays.copyOf(best, best.length + taken);
+            if (taken > 0) {
+                System.arraycopy(ranksByMissedTerms[missedTerms], 0, best, best.length - taken, taken);
+            }
+        }
+        return best;
+    }
+
+    private static void siftUp(long[] heap, int index) {
+        while (index > 0 && heap[(index - 1) / 2] < heap[index]) {
+            swap(heap, index, (index - 1) / 2);
+            index = (index - 1) / 2;
+        }
+    }
+
+    private static void siftDown(long[] heap, int size) {
+        int index = 0;
+        while (true) {
+            int largest = index;
+            for (int child = 2 * index + 1; child <= 2 * index + 2 && child < size; child++) {
+                if (heap[child] > heap[largest]) {
+                    largest = child;
+                }
+            }
+            if (largest == index) {
+                return;
+            }
+            swap(heap, index, largest);
+            index = largest;
+        }
+    }
+
+    private static void swap(long[] heap, int i, int j) {
+        long value = heap[i];
+        heap[i] = heap[j];
+        heap[j] = value;
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    String getStatsSummary() {
+        lock.readLock().lock();
+        try {
+            return "Search index: " + documents.size() + " documents, " + postingsByWord.size() + " words";
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static String getIndexedText(Object item) {
+        if (item instanceof Category) {
+            return ((Category) item).name;
+        }
+        if (item instanceof Playlist) {
+            return ((Playlist) item).name;
+        }
+        if (item instanceof Album) {
+            Album album = (Album) item;
+            StringBuilder text = new StringBuilder(String.valueOf(album.name));
+            for (Artist artist : album.getArtists()) {
+                if (artist.name != null) {
+                    text.append(' ').append(artist.name);
+                }
+            }
+            return text.toString();
+        }
+        return null;
+    }
+
+    static Set<String> tokenize(String text) {
+        Set<String> words = new LinkedHashSet<>();
+        if (text == null) {
+            return words;
+        }
+        String lowerCaseText = text.toLowerCase(Locale.ROOT);
+        int wordStart = -1;
+        for (int i = 0; i <= lowerCaseText.length(); i++) {
+            boolean wordCharacter = i < lowerCaseText.length() && Character.isLetterOrDigit(lowerCaseText.charAt(i));
+            if (wordCharacter && wordStart < 0) {
+                wordStart = i;
+            } else if (! wordCharacter && wordStart >= 0) {
+                words.add(lowerCaseText.substring(wordStart, i));
+                wordStart = -1;
+            }
+        }
+        return words;
+    }
+}
@@ -0,0 +1,240 @@
+package advisor;
+
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the advisor commands as JSON endpoints to many users at once. Each user authorizes through
+ * /login and /callback and gets a session id; every session has its own token while the HTTP client,
+ * caches, category index, request scheduler and metrics are shared through the application model.
+ *
+ * Endpoints: GET /featured, /new, /categories, /playlists?category=NAME, /search?q=TERMS and /similar?artist=NAME, with the
+ * session id sent in the X-Advisor-Session header. A session ends on GET /logout, or once it has been idle for
+ * sessionIdleTimeout.
+ */
+class SpotifyAdvisorDaemon {
+
+    static final String SESSION_HEADER = "X-Advisor-Session";
+
+    private final SpotifyClientModel sharedModel;
+    private final boolean allPages;
+    private final HttpServer server;
+    private final ExecutorService requestExecutor;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sessionReaper =
+            Executors.newSingleThreadScheduledExecutor(SpotifyClientModel.daemonThreadFactory("spotify-advisor-sessions"));
+    Duration sessionIdleTimeout = Duration.ofMinutes(30);
+
+    private static class Session {
+        final SpotifyClientModel model;
+        volatile long lastUsedMillis = System.currentTimeMillis();
+
+        Session(SpotifyClientModel model) {
+            this.model = model;
+        }
+    }
+
+    SpotifyAdvisorDaemon(SpotifyClientModel sharedModel, int port, boolean allPages) throws IOException {
+        this.sharedModel = sharedModel;
+        this.allPages = allPages;
+        this.requestExecutor = newRequestExecutor();
+
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(requestExecutor);
+        server.createContext("/login", this::handleLogin);
+        server.createContext("/callback", this::handleCallback);
+        server.createContext("/logout", this::handleLogout);
+        server.createContext("/featured", exchange -> handleCommand(exchange, "featured"));
+        server.createContext("/new", exchange -> handleCommand(exchange, "new"));
+        server.createContext("/categories", exchange -> handleCommand(exchange, "categories"));
+        server.createContext("/playlists", this::handlePlaylists);
+        server.createContext("/search", this::handleSearch);
+        server.createContext("/similar", this::handleSimilar);
+    }
+
+    /**
+     * One virtual thread per request when the runtime has them (Java 21+), otherwise a bounded pool.
+     * The lookup is reflective because the project targets Java 11.
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 16,
+                    SpotifyClientModel.daemonThreadFactory("spotify-advisor-daemon"));
+        }
+    }
+
+    void start() {
+        server.start();
+        long reapIntervalMillis = Math.max(1000, Math.min(TimeUnit.MINUTES.toMillis(1), sessionIdleTimeout.toMillis() / 2));
+        sessionReaper.scheduleWithFixedDelay(this::closeIdleSessions, reapIntervalMillis, reapIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        server.stop(0);
+        requestExecutor.shutdownNow();
+        sessionReaper.shutdownNow();
+        for (String sessionId : sessions.keySet()) {
+            closeSession(sessionId);
+        }
+    }
+
+    private void closeIdleSessions() {
+        long idleSinceMillis = System.currentTimeMillis() - sessionIdleTimeout.toMillis();
+        sessions.forEach((sessionId, session) -> {
+            if (session.lastUsedMillis < idleSinceMillis) {
+                closeSession(sessionId);
+            }
+        });
+    }
+
+    private boolean closeSession(String sessionId) {
+        Session session = sessions.remove(sessionId);
+        if (session == null) {
+            return false;
+        }
+        session.model.closeSession();
+        return true;
+    }
+
+    String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    private String getRedirectUri() {
+        return getUrl() + "/callback";
+    }
+
+    private void handleLogin(HttpExchange exchange) throws IOException {
+        String authorizeUrl = sharedModel.spotifyAccessServer + "/authorize?client_id=" + sharedModel.clientId
+                + "&redirect_uri=" + URLEncoder.encode(getRedirectUri(), StandardCharsets.UTF_8) + "&response_type=code";
+        exchange.getResponseHeaders().set("Location", authorizeUrl);
+        exchange.sendResponseHeaders(302, -1);
+        exchange.close();
+    }
+
+    private void handleCallback(HttpExchange exchange) throws IOException {
+        String code = queryParams(exchange).get("code");
+        if (code == null || code.isEmpty()) {
+            sendError(exchange, 400, "Not found authorization code. Try again.");
+            return;
+        }
+
+        SpotifyClientModel sessionModel = new SpotifyClientModel(sharedModel);
+        sessionModel.getToken(code, getRedirectUri());
+        if (! sessionModel.authorized) {
+            sendError(exchange, 401, "The authorization code was not accepted. Try again.");
+            return;
+        }
+
+        String sessionId = UUID.randomUUID().toString();
+        sessions.put(sessionId, new Session(sessionModel));
+
+        JsonObject session = new JsonObject();
+        session.addProperty("session", sessionId);
+        send(exchange, 200, session);
+    }
+
+    private void handleLogout(HttpExchange exchange) throws IOException {
+        String sessionId = exchange.getRequestHeaders().getFirst(SESSION_HEADER);
+        if (sessionId == null || ! closeSession(sessionId)) {
+            sendError(exchange, 401, "Please, provide access for application.");
+            return;
+        }
+        JsonObject loggedOut = new JsonObject();
+        loggedOut.addProperty("session", sessionId);
+        loggedOut.addProperty("closed", true);
+        send(exchange, 200, loggedOut);
+    }
+
+    private void handlePlaylists(HttpExchange exchange) throws IOException {
+        String categoryName = queryParams(exchange).getOrDefault("category", "").trim();
+        if (categoryName.isEmpty()) {
+            sendError(exchange, 400, "The category parameter is required");
+            return;
+        }
+        handleCommand(exchange, "playlists " + categoryName);
+    }
+
+    private void handleSearch(HttpExchange exchange) throws IOException {
+        String query = queryParams(exchange).getOrDefault("q", "").trim();
+        if (query.isEmpty()) {
+            sendError(exchange, 400, "The q parameter is required");
+            return;
+        }
+        handleCommand(exchange, "search " + query);
+    }
+
+    private void handleSimilar(HttpExchange exchange) throws IOException {
+        String artistName = queryParams(exchange).getOrDefault("artist", "").trim();
+        if (artistName.isEmpty()) {
+            sendError(exchange, 400, "The artist parameter is required");
+            return;
+        }
+        handleCommand(exchange, "similar " + artistName);
+    }
+
+    private void handleCommand(HttpExchange exchange, String command) throws IOException {
+        if (! exchange.getRequestMethod().equals("GET")) {
+            sendError(exchange, 405, "Only GET is supported");
+            return;
+        }
+
+        String sessionId = exchange.getRequestHeaders().getFirst(SESSION_HEADER);
+        Session session = (sessionId != null) ? sessions.get(sessionId) : null;
+        if (session == null) {
+            sendError(exchange, 401, "Please, provide access for application.");
+            return;
+        }
+        session.lastUsedMillis = System.currentTimeMillis();
+
+        SpotifyClientBatch.CommandResult result = new SpotifyClientBatch(session.model, allPages, 1).executeCommand(command);
+        send(exchange, result.status, result.json);
+    }
+
+    private static Map<String, String> queryParams(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String param : query.split("&")) {
+                String[] entry = param.split("=", 2);
+                params.put(URLDecoder.decode(entry[0], StandardCharsets.UTF_8),
+                        (entry.length > 1) ? URLDecoder.decode(entry[1], StandardCharsets.UTF_8) : "");
+            }
+        }
+        return params;
+    }
+
+    private static void sendError(HttpExchange exchange, int statusCode, String message) throws IOException {
+        JsonObject error = new JsonObject();
+        error.addProperty("error", message);
+        send(exchange, statusCode, error);
+    }
+
+    private static void send(HttpExchange exchange, int statusCode, JsonObject body) throws IOException {
+        byte[] bodyBytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(statusCode, bodyBytes.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(bodyBytes);
+        }
+    }
+}
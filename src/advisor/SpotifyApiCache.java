@@ -0,0 +1,104 @@
+package advisor;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of parsed Spotify API responses. Entries live for the TTL configured for the longest
+ * matching resource prefix and keep the response ETag, so a stale entry can be revalidated with
+ * If-None-Match and reused as is when the server answers 304.
+ */
+class SpotifyApiCache {
+
+    static class CachedResponse {
+        final Object value;
+        final String eTag;
+        final long expiresAtMillis;
+
+        CachedResponse(Object value, String eTag, long expiresAtMillis) {
+            this.value = value;
+            this.eTag = eTag;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        boolean isFresh() {
+            return System.currentTimeMillis() < expiresAtMillis;
+        }
+    }
+
+    private final Map<String, CachedResponse> entries;
+    private final Map<String, Duration> ttlByResourcePrefix = new LinkedHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+
+    SpotifyApiCache(int maxEntries) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    synchronized void setTtl(String resourcePrefix, Duration ttl) {
+        ttlByResourcePrefix.put(resourcePrefix, ttl);
+    }
+
+    synchronized Duration getTtl(String apiResource) {
+        String bestPrefix = null;
+        for (String prefix : ttlByResourcePrefix.keySet()) {
+            if (apiResource.startsWith(prefix) && (bestPrefix == null || prefix.length() > bestPrefix.length())) {
+                bestPrefix = prefix;
+            }
+        }
+        return (bestPrefix != null) ? ttlByResourcePrefix.get(bestPrefix) : Duration.ZERO;
+    }
+
+    synchronized CachedResponse get(String key) {
+        return entries.get(key);
+    }
+
+    synchronized void put(String key, String apiResource, Object value, String eTag) {
+        Duration ttl = getTtl(apiResource);
+        if (ttl.isZero() && eTag == null) {
+            return;
+        }
+        entries.put(key, new CachedResponse(value, eTag, System.currentTimeMillis() + ttl.toMillis()));
+    }
+
+    /**
+     * Marks the entries of resources starting with resourcePrefix as stale, keeping their ETags, so the next
+     * request revalidates them with the server.
+     */
+    synchronized void expire(String resourcePrefix) {
+        entries.replaceAll((key, cached) -> key.substring(key.lastIndexOf(' ') + 1).startsWith(resourcePrefix)
+                ? new CachedResponse(cached.value, cached.eTag, 0) : cached);
+    }
+
+    void recordHit() {
+        hits.increment();
+    }
+
+    void recordMiss() {
+        misses.increment();
+    }
+
+    void recordRevalidation() {
+        revalidations.increment();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    String getStatsSummary() {
+        return "Cache entries: " + size()
+                + "\nHits: " + hits.sum()
+                + "\nMisses: " + misses.sum()
+                + "\nRevalidations (304): " + revalidations.sum();
+    }
+}
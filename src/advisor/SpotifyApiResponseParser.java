@@ -0,0 +1,9 @@
+package advisor;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+
+interface SpotifyApiResponseParser<T> {
+    T parse(JsonReader responseReader) throws IOException, HttpRequestSpotifyApiException;
+}
@@ -1,19 +1,16 @@
 package advisor;
 
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import com.sun.net.httpserver.HttpExchange;
-import com.sun.net.httpserver.HttpHandler;
-import com.sun.net.httpserver.HttpServer;
-
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.net.InetSocketAddress;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.*;
+import java.util.stream.Collectors;
 
 class SpotifyClient {
 
@@ -21,6 +18,10 @@ class SpotifyClient {
     static SpotifyClientModel modelInstance = null;
     static SpotifyClient controllerInstance = null;
 
+    boolean allPages = false;
+    boolean lazyPages = false;
+    int playlistsParallelism = 4;
+
     public static SpotifyClient getInstance() {
         if (controllerInstance == null) {
             controllerInstance = new SpotifyClient();
@@ -53,8 +54,12 @@ class SpotifyClient {
         }
 
         try {
-            List<String> categoriesNames = modelInstance.getCategories();
-            viewInstance.showResults(categoriesNames);
+            if (lazyPages) {
+                viewInstance.showResults(modelInstance.getCategoriesPageSource());
+                return;
+            }
+            List<Category> categories = modelInstance.getCategories(allPages);
+            viewInstance.showResults(categories);
         } catch (HttpRequestSpotifyApiException e) {
             viewInstance.showMessage(e.getMessage());
         }
@@ -66,16 +71,12 @@ class SpotifyClient {
         }
 
         try {
-            Map<String,String> featuredPlaylists = modelInstance.getFeaturedPlaylists();
-
-            List<String> results = new ArrayList<>();
-            for (Map.Entry<String, String> entry : featuredPlaylists.entrySet()) {
-                String playlistName = entry.getKey();
-                String playlistUrl = entry.getValue();
-                results.add(playlistName + "\n" + playlistUrl + "\n");
+            if (lazyPages) {
+                viewInstance.showResults(modelInstance.getFeaturedPlaylistsPageSource());
+                return;
             }
-
-            viewInstance.showResults(results);
+            List<Playlist> featuredPlaylists = modelInstance.getFeaturedPlaylists(allPages);
+            viewInstance.showResults(featuredPlaylists);
         } catch (HttpRequestSpotifyApiException e) {
             viewInstance.showMessage(e.getMessage());
         }
@@ -87,7 +88,11 @@ class SpotifyClient {
         }
 
         try {
-            List<String> newReleases = modelInstance.getNewReleases();
+            if (lazyPages) {
+                viewInstance.showResults(modelInstance.getNewReleasesPageSource());
+                return;
+            }
+            List<Album> newReleases = modelInstance.getNewReleases(allPages);
             viewInstance.showResults(newReleases);
         } catch (HttpRequestSpotifyApiException e) {
             viewInstance.showMessage(e.getMessage());
@@ -100,316 +105,235 @@ class SpotifyClient {
         }
 
         try {
-            List<String> playlists = modelInstance.getPlaylists(categoryName);
+            if (lazyPages) {
+                viewInstance.showResults(modelInstance.getPlaylistsPageSource(categoryName));
+                return;
+            }
+            List<Playlist> playlists = modelInstance.getPlaylists(categoryName, allPages);
             viewInstance.showResults(playlists);
         } catch (HttpRequestSpotifyApiException e) {
             viewInstance.showMessage(e.getMessage());
         }
     }
 
-    public void setSpotifyAccessServer(String spotifyAccessServer) {
-        modelInstance.spotifyAccessServer = spotifyAccessServer;
-    }
-
-    public void setSpotifyApiServer(String spotifyApiServer) {
-        modelInstance.spotifyApiServer = spotifyApiServer;
+    void search(String query) {
+        List<Object> results = modelInstance.search(query);
+        if (results.isEmpty()) {
+            viewInstance.showMessage("No results.");
+        } else {
+            viewInstance.showResults(results);
+        }
     }
-}
-
-class SpotifyClientModel {
-
-    Map<String,String> authorizationCodes = new HashMap<>();
-
-    String clientId;
-    String clientSecret;
-    String spotifyAccessServer = "https://accounts.spotify.com";
-    String spotifyApiServer = "https://api.spotify.com";
-
-    int httpPort = 8000;
-    String redirectUri = "http://localhost:" + Integer.toString(httpPort);
 
-    boolean authorized = false;
-
-    HttpServer server;
-
-    SpotifyClientModel(String clientId, String clientSecret) {
-        this.clientId = clientId;
-        this.clientSecret = clientSecret;
-    }
+    /**
+     * Prints the artists most often on the same new releases as artistName, then albums of those artists.
+     */
+    void similar(String artistName) {
+        if (! checkAuth()) {
+            return;
+        }
 
-    public boolean checkAuth() {
-        if (! authorized) {
-            System.out.println("Please, provide access for application.");
+        try {
+            ArtistGraph.Recommendations recommendations = modelInstance.getSimilarArtists(artistName, allPages);
+            if (recommendations == null) {
+                viewInstance.showMessage("Unknown artist.");
+            } else if (recommendations.relatedArtists.isEmpty()) {
+                viewInstance.showMessage("No similar artists.");
+            } else {
+                List<Object> results = new ArrayList<>(recommendations.relatedArtists);
+                results.addAll(recommendations.albums);
+                viewInstance.showResults(results);
+            }
+        } catch (HttpRequestSpotifyApiException e) {
+            viewInstance.showMessage(e.getMessage());
         }
-        return authorized;
     }
 
-    void startServer() throws IOException {
-        server = HttpServer.create();
-        server.bind(new InetSocketAddress(httpPort), 0);
-        server.createContext("/",
-                new HttpHandler() {
-                    public void handle(HttpExchange exchange) throws IOException {
-                        Map<String, String> queryMap = httpQueriesParamsToMap(exchange.getRequestURI().getQuery());
-
-                        if (queryMap != null && queryMap.containsKey("code")) {
-                            System.out.println("code received");
-                            String code = queryMap.get("code");
-                            authorizationCodes.put("authorization_code", code);
-                            String successResponse = "Got the code. Return back to your program.";
-                            exchange.sendResponseHeaders(200, successResponse.length());
-                            exchange.getResponseBody().write(successResponse.getBytes());
-                            exchange.getResponseBody().close();
-                            getToken(code, redirectUri);
-                        }
+    /**
+     * Prints the playlists of every category, a category at a time as their playlists arrive.
+     */
+    void allPlaylists() {
+        if (! checkAuth()) {
+            return;
+        }
 
-                        if (queryMap == null || ! queryMap.containsKey("code") || ! authorized) {
-//                            String failResponse = "Authorization code not found. Try again.";
-                            String failResponse = "Not found authorization code. Try again.";
-                            exchange.sendResponseHeaders(401, failResponse.length());
-                            exchange.getResponseBody().write(failResponse.getBytes());
-                            exchange.getResponseBody().close();
-                        }
-                    }
+        try {
+            modelInstance.getAllPlaylists(allPages, playlistsParallelism, new CategoryPlaylistsListener() {
+                @Override
+                public void onPlaylists(Category category, List<Playlist> playlists) {
+                    viewInstance.showCategoryPlaylists(category, playlists);
                 }
-        );
-        server.start();
-    }
 
-    void stopServer() {
-        if (server != null) {
-            server.stop(1);
+                @Override
+                public void onError(Category category, String errorMessage) {
+                    viewInstance.showCategoryError(category, errorMessage);
+                }
+            });
+        } catch (HttpRequestSpotifyApiException e) {
+            viewInstance.showMessage(e.getMessage());
         }
     }
 
-    void getToken(String code, String redirectUri) {
-        System.out.println("Making http request for access_token...");
-
-        String tokenUrl = spotifyAccessServer + "/api/token";
-
-        HttpClient client = HttpClient.newBuilder().build();
-
-        HttpRequest request = HttpRequest.newBuilder()
-                .header("Content-Type", "application/x-www-form-urlencoded")
-                .header("Authorization", "Basic " + encodeBase64(clientId + ":" + clientSecret))
-                .uri(URI.create(tokenUrl))
-                .POST(HttpRequest.BodyPublishers.ofString("grant_type=authorization_code&code=" + code + "&redirect_uri=" + redirectUri))
-                .build();
-
-        HttpResponse<String> response = null;
-        try {
-            response = client.send(request, HttpResponse.BodyHandlers.ofString());
-        } catch (IOException|InterruptedException e) {
-            e.printStackTrace();
-        }
-
-        if (response != null) {
-            System.out.println("Success!");
-
-            JsonObject accessTokenJson = JsonParser.parseString(response.body()).getAsJsonObject();
-            String accessToken = accessTokenJson.get("access_token").getAsString();
-
-            authorizationCodes.put("access_token", accessToken);
-            authorized = true;
-        } else {
-//            String errorMessage = "Not found authorization code. Try again.";
-//            System.out.println(errorMessage);
-            authorized = false;
-        }
+    void stats() {
+        viewInstance.showMessage(modelInstance.getStats());
     }
 
-    String encodeBase64(String textToEncode) {
-        return Base64.getEncoder().encodeToString(textToEncode.getBytes());
+    SpotifyMetrics getMetrics() {
+        return modelInstance.metrics;
     }
 
-    void authorize() {
-        try {
-            startServer();
-        } catch (IOException e) {
-            e.printStackTrace();
-            System.out.println(e.getMessage());
-            System.out.println("There was a problem starting the http server in the spotifyAuth ");
-        }
+    public void setStatsDump(String statsFile, int intervalSeconds) {
+        modelInstance.startStatsDump(Paths.get(statsFile), Duration.ofSeconds(intervalSeconds));
+    }
 
-        System.out.println("use this link to request the access code:");
-        System.out.println(spotifyAccessServer + "/authorize?client_id=" + clientId + "&redirect_uri=http://localhost:8000&response_type=code");
-        System.out.println("waiting for code...");
+    void schedulerStats() {
+        viewInstance.showMessage(modelInstance.getSchedulerStats());
+    }
 
-        while (! authorized) {
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+    void serve(int port) {
+        // Daemon clients send request after request on one kept-alive connection, and with TCP_NODELAY off
+        // (the JDK server's default) every answer after the first waits out their delayed ack. The server
+        // reads the flag once, when the first one is created, so it is set here unless given with -D.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
         }
         try {
-            Thread.sleep(100);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+            SpotifyAdvisorDaemon daemon = new SpotifyAdvisorDaemon(modelInstance, port, allPages);
+            daemon.start();
+            viewInstance.showMessage("Serving recommendations on " + daemon.getUrl());
+        } catch (IOException e) {
+            viewInstance.showMessage("There was a problem starting the advisor server: " + e.getMessage());
         }
-
-        stopServer();
     }
 
-    Map<String, String> httpQueriesParamsToMap(String query) {
-        // TODO Support cases like queries params with & or =. Also it doesn't support cases like x=111&x=222
-        if (query == null) {
-            return null;
-        }
-
-        Map<String, String> result = new HashMap<>();
-        for (String param : query.split("&")) {
-            String[] entry = param.split("=");
-            if (entry.length > 1) {
-                result.put(entry[0], entry[1]);
-            }else{
-                result.put(entry[0], "");
-            }
-        }
-        return result;
+    void batch(List<String> commands, int parallelism) {
+        new SpotifyClientBatch(modelInstance, allPages, parallelism).run(commands, System.out);
     }
 
-    private HttpResponse<String> getHttpSpotifyApiRequest(String apiResource) {
-        HttpClient client = HttpClient.newBuilder().build();
-
-        HttpRequest categoriesRequest = HttpRequest.newBuilder()
-                .header("Authorization", "Bearer " + getAccessToken())
-                .uri(URI.create(spotifyApiServer + apiResource))
-                .GET()
-                .build();
-
-        HttpResponse<String> response = null;
-        try {
-            response = client.send(categoriesRequest, HttpResponse.BodyHandlers.ofString());
-        } catch (IOException|InterruptedException e) {
-            e.printStackTrace();
-        }
-        return response;
+    void cacheStats() {
+        viewInstance.showMessage(modelInstance.getCacheStats());
     }
 
-    private String getAccessToken() {
-        return authorizationCodes.get("access_token");
+    public void setPrefetch(int intervalSeconds, int hotCategories) {
+        modelInstance.startPrefetch(Duration.ofSeconds(intervalSeconds), hotCategories, allPages);
     }
 
-    public List<String> getCategories() throws HttpRequestSpotifyApiException {
-        HttpResponse<String> response = getHttpSpotifyApiRequest("/v1/browse/categories");
+    void exit() {
+        modelInstance.shutdown();
+    }
 
-        if (response != null && response.statusCode() == 200) {
-            JsonObject categoriesJson = JsonParser.parseString(response.body()).getAsJsonObject().get("categories").getAsJsonObject();
+    void restoreAuthorization() {
+        modelInstance.restoreToken();
+    }
 
-            List<String> categoriesNames = new ArrayList<>();
-            for (JsonElement item : categoriesJson.getAsJsonArray("items")) {
-                categoriesNames.add(item.getAsJsonObject().get("name").getAsString());
-            }
-            return categoriesNames;
-        } else {
-            String requestErrorMessage = (response != null) ? response.body() : "";
-            throw new HttpRequestSpotifyApiException("There was an issue getting the categories. See error message: " + requestErrorMessage);
-        }
+    void restoreCatalog() {
+        modelInstance.restoreCatalog();
     }
 
-    public Map<String,String> getFeaturedPlaylists() throws HttpRequestSpotifyApiException {
+    public void setCatalogFile(String catalogFile) {
+        modelInstance.catalogFile = catalogFile.equals("none") ? null : Paths.get(catalogFile);
+    }
 
-        HttpResponse<String> response = getHttpSpotifyApiRequest("/v1/browse/featured-playlists");
+    public void setTokenFile(String tokenFile) {
+        modelInstance.tokenFile = Paths.get(tokenFile);
+    }
 
-        if (response != null && response.statusCode() == 200) {
-            JsonObject playlistsJson = JsonParser.parseString(response.body()).getAsJsonObject().get("playlists").getAsJsonObject();
-            Map<String,String> playlists = new LinkedHashMap<>();
-            for (JsonElement item : playlistsJson.getAsJsonArray("items")) {
-                String playlistName = item.getAsJsonObject().get("name").getAsString();
-                String playlistUrl = item.getAsJsonObject().get("external_urls").getAsJsonObject().get("spotify").getAsString();
-                playlists.put(playlistName, playlistUrl);
-            }
-            return playlists;
-        } else {
-            String requestErrorMessage = (response != null) ? response.body() : "";
-            throw new HttpRequestSpotifyApiException("There was an issue getting the featured playlists. See error message: " + requestErrorMessage);
-        }
+    public void setAllPages(boolean allPages) {
+        this.allPages = allPages;
     }
 
-    public List<String> getNewReleases() throws HttpRequestSpotifyApiException {
+    public void setLazyPages(boolean lazyPages) {
+        this.lazyPages = lazyPages;
+    }
 
-        HttpResponse<String> response = getHttpSpotifyApiRequest("/v1/browse/new-releases");
+    public void setPlaylistsParallelism(int playlistsParallelism) {
+        this.playlistsParallelism = playlistsParallelism;
+    }
 
-        if (response != null && response.statusCode() == 200) {
-            JsonObject newAlbumsJson = JsonParser.parseString(response.body()).getAsJsonObject().get("albums").getAsJsonObject();
-            List<String> newReleases = new ArrayList<>();
-            for (JsonElement item : newAlbumsJson.getAsJsonArray("items")) {
-                String albumName = item.getAsJsonObject().get("name").getAsString();
+    public void setSpotifyAccessServer(String spotifyAccessServer) {
+        modelInstance.spotifyAccessServer = spotifyAccessServer;
+    }
 
-                List<String> albumArtists = new ArrayList<>();
-                item.getAsJsonObject().getAsJsonArray("artists").forEach(artistJsonElement -> albumArtists.add(artistJsonElement.getAsJsonObject().get("name").getAsString()));
+    public void setSpotifyApiServer(String spotifyApiServer) {
+        modelInstance.spotifyApiServer = spotifyApiServer;
+    }
 
-                String albumUrl = item.getAsJsonObject().get("external_urls").getAsJsonObject().get("spotify").getAsString();
+    void setMessages(PrintStream messages) {
+        modelInstance.messages = messages;
+    }
+}
 
-                newReleases.add(albumName + "\n" + albumArtists + "\n" + albumUrl + "\n");
-            }
-            return newReleases;
+interface ConsoleShowResultsAlgorithm {
+    void showResults(ResultsPageSource results);
+
+    default void showResults(List<?> entries) {
+        showResults(new ListResultsPageSource(entries));
+    }
+
+    /**
+     * Writes one entry in its console form, piece by piece, so no formatted copy of it is kept around.
+     */
+    static void printEntry(ConsoleOutput out, Object entry) {
+        if (entry instanceof Category) {
+            out.println(((Category) entry).name);
+        } else if (entry instanceof Playlist) {
+            Playlist playlist = (Playlist) entry;
+            out.println(playlist.name);
+            out.println(playlist.url);
+            out.println();
+        } else if (entry instanceof Album) {
+            Album album = (Album) entry;
+            out.println(album.name);
+            out.println(album.getArtists());
+            out.println(album.url);
+            out.println();
         } else {
-            String requestErrorMessage = (response != null) ? response.body() : "";
-            throw new HttpRequestSpotifyApiException("There was an issue getting the new releases. See error message: " + requestErrorMessage);
+            out.println(entry);
         }
-
     }
+}
 
-    public List<String> getPlaylists(String categoryName) throws HttpRequestSpotifyApiException  {
-
-        String errorMessage = "Specified id doesn't exist";
-        String categoryId = errorMessage;
-
-        HttpResponse<String> responseCategories = getHttpSpotifyApiRequest("/v1/browse/categories");
-        if (responseCategories != null && responseCategories.statusCode() == 200) {
-            JsonObject categoriesJson = JsonParser.parseString(responseCategories.body()).getAsJsonObject().get("categories").getAsJsonObject();
-            for (JsonElement item : categoriesJson.getAsJsonArray("items")) {
-                if (categoryName.equals(item.getAsJsonObject().get("name").getAsString())) {
-                    categoryId = item.getAsJsonObject().get("id").getAsString();
-                }
-            }
-        }
-
-        int responsePlaylistsStatusCode = 500;
-        if (! categoryId.equals(errorMessage)) {
-            HttpResponse<String> responsePlaylists = getHttpSpotifyApiRequest("/v1/browse/categories/" + categoryId + "/playlists");
+/**
+ * Writes every entry without paging. Entries are pulled and written a chunk at a time, so a long listing
+ * streams out while the rest of it is still being fetched, and the output is flushed once per chunk
+ * rather than per line. Streaming stops early when the output is gone, e.g. a closed pipe.
+ */
+class ConsoleShowResultsRaw implements ConsoleShowResultsAlgorithm {
 
-            if(responsePlaylists != null && responsePlaylists.statusCode() == 200 && responsePlaylists.body().contains("playlists")) {
-                JsonObject categoriesJson = JsonParser.parseString(responsePlaylists.body()).getAsJsonObject().get("playlists").getAsJsonObject();
+    static final int CHUNK_ENTRIES = 50;
 
-                List<String> playlists = new ArrayList<>();
-                for (JsonElement item : categoriesJson.getAsJsonArray("items")) {
-                    String playlistName = item.getAsJsonObject().get("name").getAsString();
-                    String playlistUrl = item.getAsJsonObject().get("external_urls").getAsJsonObject().get("spotify").getAsString();
+    SpotifyMetrics metrics;
+    ConsoleOutput output;
 
-                    playlists.add(playlistName + "\n" + playlistUrl + "\n");
-                }
-                return playlists;
-            } else {
-                errorMessage = JsonParser.parseString(responsePlaylists.body()).getAsJsonObject().get("error").getAsJsonObject().get("message").getAsString();
-                responsePlaylistsStatusCode = 404;
-            }
-        }
-
-        if (categoryId.equals(errorMessage) || responsePlaylistsStatusCode != 200 || responseCategories.statusCode() != 200) {
-            throw new HttpRequestSpotifyApiException(errorMessage);
-        }
-        return List.of();
+    ConsoleShowResultsRaw() {
+        this(new SpotifyMetrics());
     }
-}
 
-class HttpRequestSpotifyApiException extends Exception {
-    public HttpRequestSpotifyApiException(String errorMessage) {
-        super(errorMessage);
+    ConsoleShowResultsRaw(SpotifyMetrics metrics) {
+        this(metrics, new BufferedConsoleOutput(System.out));
     }
-}
-
-interface ConsoleShowResultsAlgorithm {
-    void showResults(List<String> messages);
-}
 
-class ConsoleShowResultsRaw implements ConsoleShowResultsAlgorithm {
+    ConsoleShowResultsRaw(SpotifyMetrics metrics, ConsoleOutput output) {
+        this.metrics = metrics;
+        this.output = output;
+    }
 
     @Override
-    public void showResults(List<String> messages) {
-        messages.forEach((String message) -> System.out.println(message));
+    public void showResults(ResultsPageSource results) {
+        try {
+            int totalEntries = results.getTotalEntries();
+            for (int fromIndex = 0; fromIndex < totalEntries && ! output.checkError(); fromIndex += CHUNK_ENTRIES) {
+                List<?> entries = results.getEntries(fromIndex, Math.min(totalEntries, fromIndex + CHUNK_ENTRIES));
+
+                long renderStartNanos = System.nanoTime();
+                entries.forEach(entry -> ConsoleShowResultsAlgorithm.printEntry(output, entry));
+                output.flush();
+                metrics.renderLatency.record(System.nanoTime() - renderStartNanos);
+            }
+        } catch (HttpRequestSpotifyApiException e) {
+            output.println(e.getMessage());
+            output.flush();
+        }
     }
 
 }
@@ -417,46 +341,79 @@ class ConsoleShowResultsRaw implements ConsoleShowResultsAlgorithm {
 class ConsoleShowResultsPaginated implements ConsoleShowResultsAlgorithm {
 
     int entriesPerPage;
+    SpotifyMetrics metrics;
+    ConsoleOutput output;
+    ConsoleInput input;
 
     ConsoleShowResultsPaginated(int entriesPerPage) {
+        this(entriesPerPage, new SpotifyMetrics());
+    }
+
+    ConsoleShowResultsPaginated(int entriesPerPage, SpotifyMetrics metrics) {
+        this(entriesPerPage, metrics, new BufferedConsoleOutput(System.out), new ConsoleInput(System.in));
+    }
+
+    ConsoleShowResultsPaginated(int entriesPerPage, SpotifyMetrics metrics, ConsoleOutput output, ConsoleInput input) {
         this.entriesPerPage = entriesPerPage;
+        this.metrics = metrics;
+        this.output = output;
+        this.input = input;
     }
 
     @Override
-    public void showResults(List<String> messages) {
+    public void showResults(ResultsPageSource results) {
         int currentPage = 1;
-        int totalPages = ((messages.size() / entriesPerPage) < 1) ? 1 : messages.size() / entriesPerPage;
-        showNResults(messages, currentPage, totalPages);
+        int totalPages;
+        try {
+            totalPages = Math.max(1, (results.getTotalEntries() + entriesPerPage - 1) / entriesPerPage);
+            showNResults(results, currentPage, totalPages);
+        } catch (HttpRequestSpotifyApiException e) {
+            output.println(e.getMessage());
+            output.flush();
+            return;
+        }
 
-        Scanner scanner = new Scanner(System.in);
         while (true) {
-            String input = scanner.nextLine();
-            if (input.equals("prev")) {
+            String line = input.readLine();
+            if (line == null) {
+                break;
+            }
+            if (line.equals("prev")) {
                 if (currentPage == 1) {
-                    System.out.println("No more pages.");
+                    output.println("No more pages.");
                 } else {
                     currentPage--;
                 }
-            } else if (input.equals("next")) {
+            } else if (line.equals("next")) {
                 if (currentPage == totalPages) {
-                    System.out.println("No more pages.");
+                    output.println("No more pages.");
                 } else {
                     currentPage++;
                 }
             } else {
+                // Not paging any more: the line is the next command
+                input.unread(line);
                 break;
             }
-            showNResults(messages, currentPage, totalPages);
+            try {
+                showNResults(results, currentPage, totalPages);
+            } catch (HttpRequestSpotifyApiException e) {
+                output.println(e.getMessage());
+                output.flush();
+            }
         }
     }
 
-    private void showNResults(List<String> messages, int pageNumber, int totalPages) {
+    private void showNResults(ResultsPageSource results, int pageNumber, int totalPages) throws HttpRequestSpotifyApiException {
         int fromIndex = (pageNumber - 1) * entriesPerPage;
-        List<String> messagesInCurrentPage = messages.subList(fromIndex, fromIndex + entriesPerPage);
+        List<?> entriesInCurrentPage = results.getEntries(fromIndex, fromIndex + entriesPerPage);
 
-        messagesInCurrentPage.forEach((String message) -> System.out.println(message));
+        long renderStartNanos = System.nanoTime();
+        entriesInCurrentPage.forEach(entry -> ConsoleShowResultsAlgorithm.printEntry(output, entry));
 
-        System.out.println("---PAGE " + pageNumber + " OF " + totalPages + "---");
+        output.println("---PAGE " + pageNumber + " OF " + totalPages + "---");
+        output.flush();
+        metrics.renderLatency.record(System.nanoTime() - renderStartNanos);
     }
 
 }
@@ -467,53 +424,161 @@ class SpotifyClientViewConsole {
     String spotifyAccessServer = "";
     String spotifyApiServer = "";
     int entriesPerPage = 5;
+    boolean allPages = false;
+    boolean lazyPages = false;
+    String batchFile = "";
+    int servePort = 0;
+    String tokenFile = "";
+    String statsFile = "";
+    int statsInterval = 60;
+    int batchParallelism = 8;
+    int playlistsParallelism = 4;
+    String catalogFile = "";
+    int prefetchInterval = 0;
+    int prefetchCategories = 5;
+    boolean rawOutput = false;
     private ConsoleShowResultsAlgorithm showResultsAlgorithm;
+    private ConsoleOutput consoleOutput;
+    private ConsoleInput consoleInput;
 
     SpotifyClientViewConsole(SpotifyClient spotifyClient) {
         this.spotifyClient = spotifyClient;
     }
 
-    public void showResults(List<String> resultsLines) {
-        showResultsAlgorithm.showResults(resultsLines);
+    public void showResults(List<?> results) {
+        showResultsAlgorithm.showResults(results);
+    }
+
+    public void showResults(ResultsPageSource results) {
+        showResultsAlgorithm.showResults(results);
     }
 
     public void showMessage(String message) {
         showResultsAlgorithm.showResults(List.of(message));
     }
 
+    /**
+     * Prints one category's playlists in full, without paging, so the categories of a fan-out arriving
+     * from several threads never interleave.
+     */
+    public synchronized void showCategoryPlaylists(Category category, List<Playlist> playlists) {
+        consoleOutput.println("---" + category.name + "---");
+        playlists.forEach(playlist -> ConsoleShowResultsAlgorithm.printEntry(consoleOutput, playlist));
+        consoleOutput.flush();
+    }
+
+    public synchronized void showCategoryError(Category category, String errorMessage) {
+        consoleOutput.println("---" + category.name + "---");
+        consoleOutput.println(errorMessage);
+        consoleOutput.flush();
+    }
+
     public void consoleUIProcess(String[] args) {
         parseArgs(args);
-        showResultsAlgorithm = new ConsoleShowResultsPaginated(entriesPerPage);
+        if (! batchFile.isEmpty()) {
+            // Keep stdout to one JSON object per line
+            spotifyClient.setMessages(System.err);
+        }
+        consoleOutput = new BufferedConsoleOutput(System.out);
+        consoleInput = new ConsoleInput(System.in);
+        if (rawOutput) {
+            showResultsAlgorithm = new ConsoleShowResultsRaw(spotifyClient.getMetrics(), consoleOutput);
+        } else {
+            showResultsAlgorithm = new ConsoleShowResultsPaginated(entriesPerPage, spotifyClient.getMetrics(), consoleOutput, consoleInput);
+        }
         if (! spotifyAccessServer.isEmpty()) {
             spotifyClient.setSpotifyAccessServer(spotifyAccessServer);
         }
         if (! spotifyAccessServer.isEmpty()) {
             spotifyClient.setSpotifyApiServer(spotifyApiServer);
         }
+        spotifyClient.setAllPages(allPages);
+        spotifyClient.setLazyPages(lazyPages);
+        spotifyClient.setPlaylistsParallelism(playlistsParallelism);
+        if (! tokenFile.isEmpty()) {
+            spotifyClient.setTokenFile(tokenFile);
+        }
+        spotifyClient.restoreAuthorization();
+        if (! catalogFile.isEmpty()) {
+            spotifyClient.setCatalogFile(catalogFile);
+        }
+        spotifyClient.restoreCatalog();
+        if (! statsFile.isEmpty()) {
+            spotifyClient.setStatsDump(statsFile, statsInterval);
+        }
 
-        Scanner scanner = new Scanner(System.in);
+        if (prefetchInterval > 0) {
+            spotifyClient.setPrefetch(prefetchInterval, prefetchCategories);
+        }
+
+        if (! batchFile.isEmpty()) {
+            batchProcess();
+            spotifyClient.exit();
+            return;
+        }
+        if (servePort > 0) {
+            showResultsAlgorithm = new ConsoleShowResultsRaw(spotifyClient.getMetrics(), consoleOutput);
+            spotifyClient.serve(servePort);
+            return;
+        }
 
         while (true) {
-            String input = scanner.nextLine();
+            String input = consoleInput.readLine();
+            if (input == null) {
+                // End of the piped commands
+                spotifyClient.exit();
+                return;
+            }
             if (input.equals("featured")) {
                 spotifyClient.featured();
             } else if (input.equals("new")) {
                 spotifyClient.newReleases();
             } else if (input.equals("categories")) {
                 spotifyClient.categories();
+            } else if (input.startsWith("search ")) {
+                spotifyClient.search(input.substring("search".length() + 1));
+            } else if (input.startsWith("similar ")) {
+                spotifyClient.similar(input.substring("similar".length() + 1));
+            } else if (input.equals("playlists --all")) {
+                spotifyClient.allPlaylists();
             } else if (input.contains("playlists")) {
                 String categoryName = input.substring("playlists".length() + 1);
                 spotifyClient.playlists(categoryName);
+            } else if (input.equals("cache")) {
+                spotifyClient.cacheStats();
+            } else if (input.equals("stats")) {
+                spotifyClient.stats();
+            } else if (input.equals("scheduler")) {
+                spotifyClient.schedulerStats();
             } else if (input.equals("auth")) {
                 spotifyClient.authorize();
             } else if (input.equals("exit")) {
                 exit();
+                return;
             } else {
                 throw new RuntimeException("Command not supported");
             }
         }
     }
 
+    /**
+     * Runs the commands of the batch file ("-" reads them from stdin) and prints the results as JSON Lines.
+     */
+    void batchProcess() {
+        List<String> commands;
+        try {
+            if (batchFile.equals("-")) {
+                commands = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)).lines().collect(Collectors.toList());
+            } else {
+                commands = Files.readAllLines(Paths.get(batchFile), StandardCharsets.UTF_8);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("There was a problem reading the batch commands: " + e.getMessage());
+            return;
+        }
+        spotifyClient.batch(commands, batchParallelism);
+    }
+
     public void parseArgs(String[] args) {
         for (int i = 0; i < args.length; i += 2) {
             if (args[i].equals("-access")) {
@@ -525,14 +590,51 @@ class SpotifyClientViewConsole {
             if (args[i].equals("-page")) {
                 entriesPerPage = Integer.valueOf(args[i + 1]);
             }
+            if (args[i].equals("-stats")) {
+                statsFile = args[i + 1];
+            }
+            if (args[i].equals("-statsInterval")) {
+                statsInterval = Integer.valueOf(args[i + 1]);
+            }
+            if (args[i].equals("-tokens")) {
+                tokenFile = args[i + 1];
+            }
+            if (args[i].equals("-serve")) {
+                servePort = Integer.valueOf(args[i + 1]);
+            }
+            if (args[i].equals("-batch")) {
+                batchFile = args[i + 1];
+            }
+            if (args[i].equals("-parallel")) {
+                batchParallelism = Integer.valueOf(args[i + 1]);
+            }
+            if (args[i].equals("-playlistsParallel")) {
+                playlistsParallelism = Integer.valueOf(args[i + 1]);
+            }
+            if (args[i].equals("-catalog")) {
+                catalogFile = args[i + 1];
+            }
+            if (args[i].equals("-prefetch")) {
+                prefetchInterval = Integer.valueOf(args[i + 1]);
+            }
+            if (args[i].equals("-prefetchCategories")) {
+                prefetchCategories = Integer.valueOf(args[i + 1]);
+            }
+            if (args[i].equals("-output")) {
+                rawOutput = args[i + 1].equals("raw");
+            }
+            if (args[i].equals("-pages")) {
+                allPages = args[i + 1].equals("all");
+                lazyPages = args[i + 1].equals("lazy");
+            }
         }
     }
 
     public void exit() {
-        showMessage("---GOODBYE!---");
+        spotifyClient.exit();
+        // Not paginated: there is no next command to page through
+        consoleOutput.println("---GOODBYE!---");
+        consoleOutput.flush();
     }
 }
 
-
-
-
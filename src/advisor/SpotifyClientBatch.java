@@ -0,0 +1,219 @@
+package advisor;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Non-interactive runner for a script of advisor commands. All commands are parsed up front and run
+ * concurrently against the model; each result is written as one JSON object per line, in input order,
+ * as soon as it and every command before it have finished. Unsupported commands produce an error line
+ * instead of stopping the run.
+ */
+class SpotifyClientBatch {
+
+    private final SpotifyClientModel model;
+    private final boolean allPages;
+    private final int parallelism;
+
+    SpotifyClientBatch(SpotifyClientModel model, boolean allPages, int parallelism) {
+        this.model = model;
+        this.allPages = allPages;
+        this.parallelism = parallelism;
+    }
+
+    void run(List<String> commands, PrintStream out) {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, SpotifyClientModel.daemonThreadFactory("spotify-batch"));
+        try {
+            List<CompletableFuture<JsonObject>> results = new ArrayList<>();
+            for (String command : commands) {
+                String trimmedCommand = command.trim();
+                if (trimmedCommand.isEmpty() || trimmedCommand.equals("exit")) {
+                    continue;
+                }
+                if (trimmedCommand.equals("auth")) {
+                    // Commands after auth need its token, so it runs before they are started
+                    model.authorize();
+                    JsonObject authResult = new JsonObject();
+                    authResult.addProperty("command", trimmedCommand);
+                    authResult.addProperty("authorized", model.authorized);
+                    results.add(CompletableFuture.completedFuture(authResult));
+                    continue;
+                }
+                results.add(CompletableFuture.supplyAsync(() -> execute(trimmedCommand), executor));
+            }
+
+            for (CompletableFuture<JsonObject> result : results) {
+                out.println(result.join());
+            }
+            out.flush();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The JSON result of a command, and the HTTP status the daemon answers it with: 200, 4xx when the
+     * command itself is at fault, 502 when the API request failed and 500 for anything else.
+     */
+    static class CommandResult {
+        final JsonObject json;
+        final int status;
+
+        CommandResult(JsonObject json, int status) {
+            this.json = json;
+            this.status = status;
+        }
+    }
+
+    JsonObject execute(String command) {
+        return executeCommand(command).json;
+    }
+
+    CommandResult executeCommand(String command) {
+        JsonObject result = new JsonObject();
+        result.addProperty("command", command);
+
+        if (! model.authorized) {
+            return error(result, 401, "Please, provide access for application.");
+        }
+
+        try {
+            JsonArray results = new JsonArray();
+            if (command.equals("featured")) {
+                model.getFeaturedPlaylists(allPages).forEach(playlist -> results.add(toJson(playlist)));
+            } else if (command.equals("new")) {
+                model.getNewReleases(allPages).forEach(album -> results.add(toJson(album)));
+            } else if (command.equals("categories")) {
+                model.getCategories(allPages).forEach(category -> results.add(toJson(category)));
+            } else if (command.startsWith("search ")) {
+                model.search(command.substring("search".length() + 1)).forEach(item -> results.add(toJson(item)));
+            } else if (command.startsWith("similar ")) {
+                ArtistGraph.Recommendations recommendations = model.getSimilarArtists(command.substring("similar".length() + 1), allPages);
+                if (recommendations == null) {
+                    return error(result, 404, "Unknown artist.");
+                }
+                recommendations.relatedArtists.forEach(artist -> results.add(toJson(artist)));
+                recommendations.albums.forEach(album -> results.add(toJson(album)));
+            } else if (command.equals("playlists --all")) {
+                allPlaylists().forEach(results::add);
+            } else if (command.startsWith("playlists ")) {
+                model.getPlaylists(command.substring("playlists".length() + 1), allPages).forEach(playlist -> results.add(toJson(playlist)));
+            } else {
+                return error(result, 400, "Command not supported");
+            }
+            result.add("results", results);
+            return new CommandResult(result, 200);
+        } catch (UnknownCategoryException e) {
+            return error(result, 404, e.getMessage());
+        } catch (HttpRequestSpotifyApiException e) {
+            return error(result, 502, e.getMessage());
+        } catch (RuntimeException e) {
+            return error(result, 500, String.valueOf(e.getMessage()));
+        }
+    }
+
+    private static CommandResult error(JsonObject result, int status, String message) {
+        result.addProperty("error", message);
+        return new CommandResult(result, status);
+    }
+
+    /**
+     * One object per category, in the categories order, holding its playlists or the error that failed them.
+     */
+    private List<JsonObject> allPlaylists() throws HttpRequestSpotifyApiException {
+        Map<Category, JsonObject> categoriesResults = new ConcurrentHashMap<>();
+        List<Category> categories = model.getAllPlaylists(allPages, parallelism, new CategoryPlaylistsListener() {
+            @Override
+            public void onPlaylists(Category category, List<Playlist> playlists) {
+                JsonArray playlistsJson = new JsonArray();
+                playlists.forEach(playlist -> playlistsJson.add(toJson(playlist)));
+
+                JsonObject categoryResult = new JsonObject();
+                categoryResult.addProperty("category", category.name);
+                categoryResult.add("results", playlistsJson);
+                categoriesResults.put(category, categoryResult);
+            }
+
+            @Override
+            public void onError(Category category, String errorMessage) {
+                JsonObject categoryResult = new JsonObject();
+                categoryResult.addProperty("category", category.name);
+                categoryResult.addProperty("error", errorMessage);
+                categoriesResults.put(category, categoryResult);
+            }
+        });
+
+        List<JsonObject> results = new ArrayList<>();
+        for (Category category : categories) {
+            JsonObject categoryResult = categoriesResults.get(category);
+            if (categoryResult != null) {
+                results.add(categoryResult);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * A search or similar artists result, tagged with its type.
+     */
+    static JsonObject toJson(Object item) {
+        JsonObject itemJson;
+        String type;
+        if (item instanceof Category) {
+            itemJson = toJson((Category) item);
+            type = "category";
+        } else if (item instanceof Playlist) {
+            itemJson = toJson((Playlist) item);
+            type = "playlist";
+        } else if (item instanceof Artist) {
+            itemJson = toJson((Artist) item);
+            type = "artist";
+        } else {
+            itemJson = toJson((Album) item);
+            type = "album";
+        }
+        itemJson.addProperty("type", type);
+        return itemJson;
+    }
+
+    static JsonObject toJson(Category category) {
+        JsonObject categoryJson = new JsonObject();
+        categoryJson.addProperty("name", category.name);
+        categoryJson.addProperty("id", category.id);
+        return categoryJson;
+    }
+
+    static JsonObject toJson(Artist artist) {
+        JsonObject artistJson = new JsonObject();
+        artistJson.addProperty("name", artist.name);
+        artistJson.addProperty("id", artist.id);
+        return artistJson;
+    }
+
+    static JsonObject toJson(Playlist playlist) {
+        JsonObject playlistJson = new JsonObject();
+        playlistJson.addProperty("name", playlist.name);
+        playlistJson.addProperty("url", (playlist.url != null) ? playlist.url.toString() : null);
+        return playlistJson;
+    }
+
+    static JsonObject toJson(Album album) {
+        JsonArray artistsJson = new JsonArray();
+        album.getArtists().forEach(artist -> artistsJson.add(artist.name));
+
+        JsonObject albumJson = new JsonObject();
+        albumJson.addProperty("name", album.name);
+        albumJson.add("artists", artistsJson);
+        albumJson.addProperty("url", (album.url != null) ? album.url.toString() : null);
+        return albumJson;
+    }
+}
@@ -0,0 +1,1109 @@
+package advisor;
+
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+
+class SpotifyClientModel {
+
+    Map<String,String> authorizationCodes = new HashMap<>();
+
+    String clientId;
+    String clientSecret;
+    String spotifyAccessServer = "https://accounts.spotify.com";
+    String spotifyApiServer = "https://api.spotify.com";
+
+    int httpPort = 8000;
+    String redirectUri = "http://localhost:" + Integer.toString(httpPort);
+
+    volatile boolean authorized = false;
+
+    HttpServer server;
+    Duration authorizationTimeout = Duration.ofMinutes(5);
+    private volatile CompletableFuture<Boolean> authorizationResult = new CompletableFuture<>();
+
+    volatile SpotifyToken token;
+    Path tokenFile = Paths.get(System.getProperty("user.home"), ".music-advisor", "token.json");
+    Duration tokenRefreshMargin = Duration.ofMinutes(1);
+    private ScheduledExecutorService tokenRefreshScheduler;
+    private ScheduledFuture<?> scheduledTokenRefresh;
+    private final Object tokenRefreshLock = new Object();
+
+    Duration connectTimeout = Duration.ofSeconds(10);
+    Duration requestTimeout = Duration.ofSeconds(30);
+    int httpClientThreads = 4;
+    int maxPageLimit = 50;
+    int maxConcurrentPageRequests = 4;
+    boolean acceptGzip = true;
+
+    // Created on first use under their own lock, so reading them never waits for the model's monitor
+    private volatile HttpClient httpClient;
+    private ExecutorService httpClientExecutor;
+    private volatile ExecutorService responseParserExecutor;
+    private volatile ExecutorService blockingExecutor;
+    private final Object executorsLock = new Object();
+
+    SpotifyApiCache cache = new SpotifyApiCache(256);
+    CategoryIndex categoryIndex = new CategoryIndex();
+    SearchIndex searchIndex = new SearchIndex();
+    int maxSearchResults = 20;
+    ArtistGraph artistGraph = new ArtistGraph();
+    int maxSimilarResults = 10;
+    SpotifyRequestScheduler requestScheduler = new SpotifyRequestScheduler(10, 20, 3);
+    SpotifyMetrics metrics = new SpotifyMetrics();
+    // Authorization progress and problems outside of a command's results; batch mode sends them to
+    // stderr, since its stdout is the JSON Lines of the results
+    PrintStream messages = System.out;
+    private ScheduledExecutorService statsDumpScheduler;
+    private volatile SpotifyPrefetcher prefetcher;
+
+    Path catalogFile = Paths.get(System.getProperty("user.home"), ".music-advisor", "catalog.bin");
+    // Null in the session models of the daemon, which save no snapshot
+    private final CatalogSnapshot.Builder catalog;
+    private volatile CatalogSnapshot warmStart;
+    private boolean reconcilingCatalog;
+    private boolean catalogWarmedUp;
+    // Search and similar wait for the snapshot to be indexed; the other commands read it as it is
+    private volatile CompletableFuture<Void> catalogWarmUp = CompletableFuture.completedFuture(null);
+
+    SpotifyClientModel(String clientId, String clientSecret) {
+        this.clientId = clientId;
+        this.clientSecret = clientSecret;
+        this.catalog = new CatalogSnapshot.Builder();
+
+        cache.setTtl("/v1/browse/categories", Duration.ofHours(1));
+        cache.setTtl("/v1/browse/categories/", Duration.ofMinutes(30));
+        cache.setTtl("/v1/browse/featured-playlists", Duration.ofMinutes(10));
+        cache.setTtl("/v1/browse/new-releases", Duration.ofMinutes(30));
+    }
+
+    /**
+     * Model for one more user of the same application: it holds its own token, which is not saved to a
+     * file, and shares the HTTP client, cache, category index, request scheduler and metrics of sharedModel.
+     */
+    SpotifyClientModel(SpotifyClientModel sharedModel) {
+        this.clientId = sharedModel.clientId;
+        this.clientSecret = sharedModel.clientSecret;
+        this.spotifyAccessServer = sharedModel.spotifyAccessServer;
+        this.spotifyApiServer = sharedModel.spotifyApiServer;
+        this.connectTimeout = sharedModel.connectTimeout;
+        this.requestTimeout = sharedModel.requestTimeout;
+        this.maxPageLimit = sharedModel.maxPageLimit;
+        this.maxConcurrentPageRequests = sharedModel.maxConcurrentPageRequests;
+        this.acceptGzip = sharedModel.acceptGzip;
+        this.tokenRefreshMargin = sharedModel.tokenRefreshMargin;
+        this.messages = sharedModel.messages;
+        this.tokenFile = null;
+        this.catalogFile = null;
+        this.catalog = null;
+
+        this.httpClient = sharedModel.getHttpClient();
+        this.responseParserExecutor = sharedModel.getResponseParserExecutor();
+        this.blockingExecutor = sharedModel.getBlockingExecutor();
+        this.tokenRefreshScheduler = sharedModel.getTokenRefreshScheduler();
+        this.cache = sharedModel.cache;
+        this.categoryIndex = sharedModel.categoryIndex;
+        this.searchIndex = sharedModel.searchIndex;
+        this.maxSearchResults = sharedModel.maxSearchResults;
+        this.artistGraph = sharedModel.artistGraph;
+        this.catalogWarmUp = sharedModel.catalogWarmUp;
+        this.maxSimilarResults = sharedModel.maxSimilarResults;
+        this.requestScheduler = sharedModel.requestScheduler;
+        this.metrics = sharedModel.metrics;
+    }
+
+    public boolean checkAuth() {
+        if (! authorized) {
+            messages.println("Please, provide access for application.");
+        }
+        return authorized;
+    }
+
+    void startServer() throws IOException {
+        server = HttpServer.create();
+        server.bind(new InetSocketAddress(httpPort), 0);
+        server.createContext("/",
+                new HttpHandler() {
+                    public void handle(HttpExchange exchange) throws IOException {
+                        Map<String, String> queryMap = httpQueriesParamsToMap(exchange.getRequestURI().getQuery());
+
+                        if (queryMap != null && queryMap.containsKey("code")) {
+                            messages.println("code received");
+                            String code = queryMap.get("code");
+                            authorizationCodes.put("authorization_code", code);
+                            String successResponse = "Got the code. Return back to your program.";
+                            exchange.sendResponseHeaders(200, successResponse.length());
+                            exchange.getResponseBody().write(successResponse.getBytes());
+                            exchange.getResponseBody().close();
+                            try {
+                                getToken(code, redirectUri);
+                            } finally {
+                                // authorize() waits on this, so a failed exchange has to end the wait too
+                                authorizationResult.complete(authorized);
+                            }
+                        } else {
+//                            String failResponse = "Authorization code not found. Try again.";
+                            String failResponse = "Not found authorization code. Try again.";
+                            exchange.sendResponseHeaders(401, failResponse.length());
+                            exchange.getResponseBody().write(failResponse.getBytes());
+                            exchange.getResponseBody().close();
+                        }
+                    }
+                }
+        );
+        server.start();
+    }
+
+    void stopServer() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    void getToken(String code, String redirectUri) {
+        messages.println("Making http request for access_token...");
+
+        HttpResponse<String> response = requestToken("grant_type=authorization_code&code=" + code + "&redirect_uri=" + redirectUri);
+
+        SpotifyToken newToken = null;
+        if (response != null && response.statusCode() == 200) {
+            try {
+                newToken = SpotifyToken.fromTokenResponse(JsonParser.parseString(response.body()).getAsJsonObject(), null);
+            } catch (RuntimeException e) {
+                messages.println("There was a problem reading the token response: " + e.getMessage());
+            }
+        } else if (response != null) {
+            messages.println("The authorization code was not accepted: " + response.statusCode() + " " + response.body());
+        }
+
+        if (newToken != null) {
+            messages.println("Success!");
+
+            setToken(newToken);
+            if (warmStart != null) {
+                reconcileCatalog();
+            }
+
+            SpotifyPrefetcher currentPrefetcher = prefetcher;
+            if (currentPrefetcher != null) {
+                currentPrefetcher.refreshNow();
+            }
+        } else {
+//            String errorMessage = "Not found authorization code. Try again.";
+//            System.out.println(errorMessage);
+            authorized = false;
+        }
+    }
+
+    private HttpResponse<String> requestToken(String tokenRequestBody) {
+        String tokenUrl = spotifyAccessServer + "/api/token";
+
+        HttpClient client = getHttpClient();
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .timeout(requestTimeout)
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .header("Authorization", "Basic " + encodeBase64(clientId + ":" + clientSecret))
+                .uri(URI.create(tokenUrl))
+                .POST(HttpRequest.BodyPublishers.ofString(tokenRequestBody))
+                .build();
+
+        HttpResponse<String> response = null;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (IOException|InterruptedException e) {
+            e.printStackTrace();
+        }
+        return response;
+    }
+
+    private void setToken(SpotifyToken newToken) {
+        token = newToken;
+        authorized = true;
+
+        if (tokenFile != null) {
+            try {
+                new SpotifyTokenStore(tokenFile).save(newToken);
+            } catch (IOException e) {
+                messages.println("There was a problem saving the access token: " + e.getMessage());
+            }
+        }
+        scheduleTokenRefresh(newToken);
+    }
+
+    /**
+     * Reloads the token set saved by a previous run. An expired access token is renewed right away when
+     * there is a refresh token, otherwise the application stays unauthorized.
+     */
+    void restoreToken() {
+        SpotifyToken storedToken;
+        try {
+            storedToken = new SpotifyTokenStore(tokenFile).load();
+        } catch (IOException | RuntimeException e) {
+            messages.println("There was a problem reading the saved access token: " + e.getMessage());
+            return;
+        }
+        if (storedToken == null) {
+            return;
+        }
+
+        token = storedToken;
+        if (! storedToken.isExpired()) {
+            authorized = true;
+            scheduleTokenRefresh(storedToken);
+        } else if (! refreshAccessToken(storedToken)) {
+            token = null;
+        }
+    }
+
+    /**
+     * Exchanges the refresh token for a new access token, unless expiredToken has already been replaced by
+     * a concurrent refresh. Returns whether a newer access token is available.
+     * Refreshes are serialized on a lock of their own: callers that find the token expired wait for the one
+     * refresh in flight, while everything else keeps using the model.
+     */
+    boolean refreshAccessToken(SpotifyToken expiredToken) {
+        synchronized (tokenRefreshLock) {
+            SpotifyToken currentToken = token;
+            if (currentToken != expiredToken) {
+                return currentToken != null;
+            }
+            if (currentToken == null || ! currentToken.canRefresh()) {
+                return false;
+            }
+
+            HttpResponse<String> response = requestToken("grant_type=refresh_token&refresh_token=" + currentToken.refreshToken);
+            if (response == null || response.statusCode() != 200) {
+                return false;
+            }
+            try {
+                setToken(SpotifyToken.fromTokenResponse(JsonParser.parseString(response.body()).getAsJsonObject(), currentToken.refreshToken));
+            } catch (RuntimeException e) {
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Ends the session of a model made for one more user: its token is dropped and its scheduled refresh
+     * cancelled. What it shares with the application model keeps running.
+     */
+    synchronized void closeSession() {
+        if (scheduledTokenRefresh != null) {
+            scheduledTokenRefresh.cancel(false);
+            scheduledTokenRefresh = null;
+        }
+        token = null;
+        authorized = false;
+    }
+
+    private synchronized void scheduleTokenRefresh(SpotifyToken scheduledToken) {
+        if (scheduledTokenRefresh != null) {
+            scheduledTokenRefresh.cancel(false);
+            scheduledTokenRefresh = null;
+        }
+        if (! scheduledToken.canRefresh() || scheduledToken.expiresAtMillis == Long.MAX_VALUE) {
+            return;
+        }
+
+        long refreshDelayMillis = Math.max(0, scheduledToken.expiresAtMillis - System.currentTimeMillis() - tokenRefreshMargin.toMillis());
+        scheduledTokenRefresh = getTokenRefreshScheduler().schedule(() -> refreshAccessToken(scheduledToken), refreshDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized ScheduledExecutorService getTokenRefreshScheduler() {
+        if (tokenRefreshScheduler == null) {
+            tokenRefreshScheduler = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("spotify-token-refresh"));
+        }
+        return tokenRefreshScheduler;
+    }
+
+    String encodeBase64(String textToEncode) {
+        return Base64.getEncoder().encodeToString(textToEncode.getBytes());
+    }
+
+    /**
+     * Starts the callback server and waits until its handler reports the outcome of the token request,
+     * the authorization times out or the waiting thread is interrupted. The callback server is stopped right after.
+     */
+    void authorize() {
+        authorizationResult = new CompletableFuture<>();
+        try {
+            startServer();
+        } catch (IOException e) {
+            e.printStackTrace();
+            messages.println(e.getMessage());
+            messages.println("There was a problem starting the http server in the spotifyAuth ");
+            return;
+        }
+
+        messages.println("use this link to request the access code:");
+        messages.println(spotifyAccessServer + "/authorize?client_id=" + clientId + "&redirect_uri=http://localhost:8000&response_type=code");
+        messages.println("waiting for code...");
+
+        try {
+            authorizationResult.get(authorizationTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            authorizationResult.cancel(false);
+            messages.println("Timed out waiting for the authorization code.");
+        } catch (CancellationException e) {
+            messages.println("Authorization cancelled.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            authorizationResult.cancel(false);
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        } finally {
+            stopServer();
+        }
+    }
+
+    Map<String, String> httpQueriesParamsToMap(String query) {
+        // TODO Support cases like queries params with & or =. Also it doesn't support cases like x=111&x=222
+        if (query == null) {
+            return null;
+        }
+
+        Map<String, String> result = new HashMap<>();
+        for (String param : query.split("&")) {
+            String[] entry = param.split("=");
+            if (entry.length > 1) {
+                result.put(entry[0], entry[1]);
+            }else{
+                result.put(entry[0], "");
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the HTTP client shared by every token and API request, so connections (and HTTP/2 streams)
+     * are reused between commands instead of paying a new handshake each time.
+     */
+    HttpClient getHttpClient() {
+        HttpClient client = httpClient;
+        if (client != null) {
+            return client;
+        }
+        synchronized (executorsLock) {
+            if (httpClient == null) {
+                httpClientExecutor = Executors.newFixedThreadPool(httpClientThreads, daemonThreadFactory("spotify-http-client"));
+                httpClient = HttpClient.newBuilder()
+                        .version(HttpClient.Version.HTTP_2)
+                        .connectTimeout(connectTimeout)
+                        .executor(httpClientExecutor)
+                        .build();
+            }
+            return httpClient;
+        }
+    }
+
+    private ExecutorService getResponseParserExecutor() {
+        ExecutorService executor = responseParserExecutor;
+        if (executor != null) {
+            return executor;
+        }
+        synchronized (executorsLock) {
+            if (responseParserExecutor == null) {
+                responseParserExecutor = Executors.newFixedThreadPool(maxConcurrentPageRequests, daemonThreadFactory("spotify-response-parser"));
+            }
+            return responseParserExecutor;
+        }
+    }
+
+    /**
+     * Unbounded pool for the few calls that block on a request of their own, like the token refresh in the
+     * 401 retry, so they neither take a parser thread nor queue behind each other across sessions.
+     */
+    private ExecutorService getBlockingExecutor() {
+        ExecutorService executor = blockingExecutor;
+        if (executor != null) {
+            return executor;
+        }
+        synchronized (executorsLock) {
+            if (blockingExecutor == null) {
+                blockingExecutor = Executors.newCachedThreadPool(daemonThreadFactory("spotify-blocking"));
+            }
+            return blockingExecutor;
+        }
+    }
+
+    static ThreadFactory daemonThreadFactory(String threadName) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private CompletableFuture<HttpResponse<byte[]>> getHttpSpotifyApiRequestAsync(String apiResource, String eTag, SpotifyToken requestToken) {
+        HttpClient client = getHttpClient();
+
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
+                .timeout(requestTimeout)
+                .header("Authorization", "Bearer " + ((requestToken != null) ? requestToken.accessToken : null))
+                .uri(URI.create(spotifyApiServer + apiResource))
+                .GET();
+        if (eTag != null) {
+            requestBuilder.header("If-None-Match", eTag);
+        }
+        if (acceptGzip) {
+            requestBuilder.header("Accept-Encoding", "gzip");
+        }
+
+        SpotifyMetrics.EndpointMetrics endpointMetrics = metrics.getEndpoint(apiResource);
+        long requestStartNanos = System.nanoTime();
+        // The body is collected by the client without blocking a thread; the response completes with its last byte
+        return client.sendAsync(requestBuilder.build(), HttpResponse.BodyHandlers.ofByteArray())
+                .whenComplete((response, e) -> {
+                    endpointMetrics.recordStatus((response != null) ? response.statusCode() : -1);
+                    if (response != null) {
+                        endpointMetrics.networkLatency.record(System.nanoTime() - requestStartNanos);
+                        endpointMetrics.bytesReceived.add(response.body().length);
+                    }
+                })
+                .exceptionally(e -> {
+                    e.printStackTrace();
+                    return null;
+                });
+    }
+
+    /**
+     * A 401 answer means the access token expired or was revoked: refresh it once and resend the request
+     * with the new token. Any other answer, or a failed refresh, is passed through unchanged.
+     */
+    private CompletableFuture<HttpResponse<byte[]>> retryUnauthorized(HttpResponse<byte[]> response, String apiResource,
+                                                                    String eTag, SpotifyToken requestToken) {
+        if (response == null || response.statusCode() != 401 || requestToken == null || ! requestToken.canRefresh()) {
+            return CompletableFuture.completedFuture(response);
+        }
+
+        // The refresh blocks on the token request, so it stays off the parser threads
+        return CompletableFuture.supplyAsync(() -> refreshAccessToken(requestToken), getBlockingExecutor())
+                .thenCompose(refreshed -> refreshed
+                        ? requestScheduler.schedule(() -> getHttpSpotifyApiRequestAsync(apiResource, eTag, token))
+                        : CompletableFuture.completedFuture(response));
+    }
+
+    /**
+     * Serves the parsed resource from the cache while its TTL lasts. Once stale, the request is revalidated
+     * with the stored ETag and a 304 answer reuses the already parsed value. Concurrent requests for the
+     * same resource share one call, paced by the request scheduler.
+     * Response bodies arrive whole without holding a thread, and only then are decoded and parsed on the
+     * parser executor, so its threads do CPU work only and never wait on the network.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> getCachedSpotifyApiResourceAsync(String apiResource, SpotifyApiResponseParser<T> parser,
+                                                                      Function<String, String> errorMessageParser) {
+        String cacheKey = getTokenScope() + " " + apiResource;
+        SpotifyApiCache.CachedResponse cached = cache.get(cacheKey);
+        if (cached != null && cached.isFresh()) {
+            cache.recordHit();
+            return CompletableFuture.completedFuture((T) cached.value);
+        }
+
+        return requestScheduler.coalesce(cacheKey, () -> {
+            String eTag = (cached != null) ? cached.eTag : null;
+            SpotifyToken requestToken = token;
+            return requestScheduler.schedule(() -> getHttpSpotifyApiRequestAsync(apiResource, eTag, requestToken))
+                    .thenCompose(response -> retryUnauthorized(response, apiResource, eTag, requestToken))
+                    .thenApplyAsync(response -> {
+                        try {
+                            return readSpotifyApiResponse(response, apiResource, cacheKey, cached, parser, errorMessageParser);
+                        } catch (HttpRequestSpotifyApiException e) {
+                            throw new CompletionException(e);
+                        }
+                    }, getResponseParserExecutor());
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T readSpotifyApiResponse(HttpResponse<byte[]> response, String apiResource, String cacheKey, SpotifyApiCache.CachedResponse cached,
+                                         SpotifyApiResponseParser<T> parser, Function<String, String> errorMessageParser) throws HttpRequestSpotifyApiException {
+        if (response == null) {
+            cache.recordMiss();
+            throw new HttpRequestSpotifyApiException(errorMessageParser.apply(""));
+        }
+
+        if (response.statusCode() == 304 && cached != null) {
+            cache.recordRevalidation();
+            cache.put(cacheKey, apiResource, cached.value, cached.eTag);
+            return (T) cached.value;
+        }
+
+        cache.recordMiss();
+        SpotifyMetrics.EndpointMetrics endpointMetrics = metrics.getEndpoint(apiResource);
+        try {
+            InputStream wireBody = new ByteArrayInputStream(response.body());
+            InputStream decodedBody = decodeContent(response, wireBody);
+            try (CountingInputStream body = new CountingInputStream(decodedBody, endpointMetrics.bytesDecoded)) {
+                if (response.statusCode() == 200) {
+                    long parseStartNanos = System.nanoTime();
+                    T value = parser.parse(new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8)));
+                    // Time spent inflating the body is not parsing
+                    endpointMetrics.parseLatency.record(System.nanoTime() - parseStartNanos - body.getReadNanos());
+                    // The parser can stop before the end of the body, e.g. the gzip trailer
+                    body.transferTo(OutputStream.nullOutputStream());
+                    if (decodedBody != wireBody) {
+                        endpointMetrics.decodeLatency.record(body.getReadNanos());
+                    }
+                    cache.put(cacheKey, apiResource, value, response.headers().firstValue("ETag").orElse(null));
+                    if (value instanceof Page) {
+                        searchIndex.addAll(((Page<?>) value).items);
+                        artistGraph.addAll(((Page<?>) value).items);
+                    }
+                    return value;
+                } else {
+                    String requestErrorBody = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+                    throw new HttpRequestSpotifyApiException(errorMessageParser.apply(requestErrorBody));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new HttpRequestSpotifyApiException(errorMessageParser.apply(String.valueOf(e.getMessage())));
+        }
+    }
+
+    /**
+     * The response body with its content coding undone. A gzip body is inflated as the parser reads it,
+     * so only its compressed form is held whole.
+     */
+    private static InputStream decodeContent(HttpResponse<?> response, InputStream wireBody) throws IOException {
+        String contentEncoding = response.headers().firstValue("Content-Encoding").orElse("identity").trim();
+        if (contentEncoding.equalsIgnoreCase("gzip") || contentEncoding.equalsIgnoreCase("x-gzip")) {
+            return new GZIPInputStream(wireBody, 8192);
+        }
+        return wireBody;
+    }
+
+    private <T> T getCachedSpotifyApiResource(String apiResource, SpotifyApiResponseParser<T> parser,
+                                              Function<String, String> errorMessageParser) throws HttpRequestSpotifyApiException {
+        return await(getCachedSpotifyApiResourceAsync(apiResource, parser, errorMessageParser));
+    }
+
+    static <T> T await(CompletableFuture<T> future) throws HttpRequestSpotifyApiException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof HttpRequestSpotifyApiException) {
+                throw (HttpRequestSpotifyApiException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the items of the first page, or of every page when allPages is set. In that case the total
+     * reported by the first page drives requests for the remaining offsets, which are sent concurrently
+     * (at most maxConcurrentPageRequests at a time) and merged back in offset order.
+     */
+    private <T> List<T> getPagedSpotifyApiResource(String apiResource, boolean allPages, SpotifyApiResponseParser<Page<T>> pageParser,
+                                                   Function<String, String> errorMessageParser) throws HttpRequestSpotifyApiException {
+        if (! allPages) {
+            return getCachedSpotifyApiResource(apiResource, pageParser, errorMessageParser).items;
+        }
+
+        Page<T> firstPage = getCachedSpotifyApiResource(pagedResource(apiResource, 0, maxPageLimit), pageParser, errorMessageParser);
+        int limit = (firstPage.limit > 0) ? firstPage.limit : maxPageLimit;
+
+        List<CompletableFuture<Page<T>>> remainingPages = new ArrayList<>();
+        Semaphore inFlightRequests = new Semaphore(maxConcurrentPageRequests);
+        try {
+            for (int offset = firstPage.offset + limit; offset < firstPage.total; offset += limit) {
+                inFlightRequests.acquire();
+                remainingPages.add(getCachedSpotifyApiResourceAsync(pagedResource(apiResource, offset, limit), pageParser, errorMessageParser)
+                        .whenComplete((page, e) -> inFlightRequests.release()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HttpRequestSpotifyApiException("Interrupted while fetching the pages of " + apiResource);
+        }
+
+        List<T> items = new ArrayList<>(Math.max(firstPage.total, firstPage.items.size()));
+        items.addAll(firstPage.items);
+        for (CompletableFuture<Page<T>> page : remainingPages) {
+            items.addAll(await(page).items);
+        }
+        return items;
+    }
+
+    private static String pagedResource(String apiResource, int offset, int limit) {
+        return apiResource + (apiResource.contains("?") ? "&" : "?") + "offset=" + offset + "&limit=" + limit;
+    }
+
+    private String getTokenScope() {
+        SpotifyToken currentToken = token;
+        return (currentToken != null) ? currentToken.scope : "";
+    }
+
+    private List<Category> getCategoriesList(boolean allPages) throws HttpRequestSpotifyApiException {
+        List<Category> categories = getPagedSpotifyApiResource("/v1/browse/categories", allPages,
+                reader -> SpotifyResponseParsers.readPage(reader, "categories", SpotifyResponseParsers::readCategory),
+                body -> "There was an issue getting the categories. See error message: " + body);
+        categoryIndex.update(categories);
+        return categories;
+    }
+
+    public List<Category> getCategories() throws HttpRequestSpotifyApiException {
+        return getCategories(false);
+    }
+
+    public List<Category> getCategories(boolean allPages) throws HttpRequestSpotifyApiException {
+        SpotifyPrefetcher currentPrefetcher = prefetcher;
+        List<Category> prefetched = (currentPrefetcher != null && currentPrefetcher.allPages == allPages) ? currentPrefetcher.getCategories() : null;
+        if (prefetched != null) {
+            return prefetched;
+        }
+        CatalogSnapshot snapshot = getWarmStart(allPages);
+        List<Category> saved = (snapshot != null) ? snapshot.getCategories() : null;
+        return (saved != null) ? saved : fetchCategories(allPages);
+    }
+
+    List<Category> fetchCategories(boolean allPages) throws HttpRequestSpotifyApiException {
+        List<Category> categories = getCategoriesList(allPages);
+        recordListing(builder -> builder.setCategories(categories, allPages));
+        return categories;
+    }
+
+    public List<Playlist> getFeaturedPlaylists() throws HttpRequestSpotifyApiException {
+        return getFeaturedPlaylists(false);
+    }
+
+    public List<Playlist> getFeaturedPlaylists(boolean allPages) throws HttpRequestSpotifyApiException {
+        SpotifyPrefetcher currentPrefetcher = prefetcher;
+        List<Playlist> prefetched = (currentPrefetcher != null && currentPrefetcher.allPages == allPages) ? currentPrefetcher.getFeaturedPlaylists() : null;
+        if (prefetched != null) {
+            return prefetched;
+        }
+        CatalogSnapshot snapshot = getWarmStart(allPages);
+        List<Playlist> saved = (snapshot != null) ? snapshot.getFeaturedPlaylists() : null;
+        return (saved != null) ? saved : fetchFeaturedPlaylists(allPages);
+    }
+
+    List<Playlist> fetchFeaturedPlaylists(boolean allPages) throws HttpRequestSpotifyApiException {
+        List<Playlist> featuredPlaylists = getPagedSpotifyApiResource("/v1/browse/featured-playlists", allPages,
+                reader -> SpotifyResponseParsers.readPage(reader, "playlists", SpotifyResponseParsers::readPlaylist),
+                body -> "There was an issue getting the featured playlists. See error message: " + body);
+        recordListing(builder -> builder.setFeaturedPlaylists(featuredPlaylists, allPages));
+        return featuredPlaylists;
+    }
+
+    public List<Album> getNewReleases() throws HttpRequestSpotifyApiException {
+        return getNewReleases(false);
+    }
+
+    public List<Album> getNewReleases(boolean allPages) throws HttpRequestSpotifyApiException {
+        SpotifyPrefetcher currentPrefetcher = prefetcher;
+        List<Album> prefetched = (currentPrefetcher != null && currentPrefetcher.allPages == allPages) ? currentPrefetcher.getNewReleases() : null;
+        if (prefetched != null) {
+            return prefetched;
+        }
+        CatalogSnapshot snapshot = getWarmStart(allPages);
+        List<Album> saved = (snapshot != null) ? snapshot.getNewReleases() : null;
+        return (saved != null) ? saved : fetchNewReleases(allPages);
+    }
+
+    List<Album> fetchNewReleases(boolean allPages) throws HttpRequestSpotifyApiException {
+        List<Album> newReleases = getPagedSpotifyApiResource("/v1/browse/new-releases", allPages,
+                reader -> SpotifyResponseParsers.readPage(reader, "albums", SpotifyResponseParsers::readAlbum),
+                body -> "There was an issue getting the new releases. See error message: " + body);
+        recordListing(builder -> builder.setNewReleases(newReleases, allPages));
+        return newReleases;
+    }
+
+    public List<Playlist> getPlaylists(String categoryName) throws HttpRequestSpotifyApiException {
+        return getPlaylists(categoryName, false);
+    }
+
+    public List<Playlist> getPlaylists(String categoryName, boolean allPages) throws HttpRequestSpotifyApiException {
+        SpotifyPrefetcher currentPrefetcher = prefetcher;
+        boolean prefetching = currentPrefetcher != null && currentPrefetcher.allPages == allPages;
+        List<Playlist> prefetched = prefetching ? currentPrefetcher.getPlaylists(categoryName) : null;
+        if (prefetched != null) {
+            currentPrefetcher.recordPlaylistsRequest(categoryName);
+            return prefetched;
+        }
+        CatalogSnapshot snapshot = getWarmStart(allPages);
+        List<Playlist> saved = null;
+        if (snapshot != null) {
+            String categoryId = categoryIndex.getId(categoryName);
+            if (categoryId == null && snapshot.getCategories() != null) {
+                categoryIndex.update(snapshot.getCategories());
+                categoryId = categoryIndex.getId(categoryName);
+            }
+            saved = (categoryId != null) ? snapshot.getPlaylists(categoryId) : null;
+        }
+        // An unknown category name throws before it is counted
+        List<Playlist> playlists = (saved != null) ? saved : fetchPlaylists(categoryName, allPages);
+        if (prefetching) {
+            currentPrefetcher.recordPlaylistsRequest(categoryName);
+        }
+        return playlists;
+    }
+
+    List<Playlist> fetchPlaylists(String categoryName, boolean allPages) throws HttpRequestSpotifyApiException {
+        return getCategoryPlaylists(getCategoryId(categoryName, allPages), allPages);
+    }
+
+    private List<Playlist> getCategoryPlaylists(String categoryId, boolean allPages) throws HttpRequestSpotifyApiException {
+        List<Playlist> playlists = getPagedSpotifyApiResource("/v1/browse/categories/" + categoryId + "/playlists", allPages,
+                reader -> SpotifyResponseParsers.readPage(reader, "playlists", SpotifyResponseParsers::readPlaylist), this::getErrorMessage);
+        recordListing(builder -> builder.setPlaylists(categoryId, playlists, allPages));
+        return playlists;
+    }
+
+    /**
+     * Fetches the playlists of every category, parallelism categories at a time, listing the categories only
+     * once. The listener gets each category's playlists, or the error that failed them, as soon as they are
+     * known, from the fetching threads. Returns the categories once every one of them is done.
+     */
+    List<Category> getAllPlaylists(boolean allPages, int parallelism, CategoryPlaylistsListener listener) throws HttpRequestSpotifyApiException {
+        List<Category> categories = getCategories(allPages);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism), daemonThreadFactory("spotify-playlists-fan-out"));
+        try {
+            List<CompletableFuture<Void>> fetches = new ArrayList<>();
+            for (Category category : categories) {
+                fetches.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        listener.onPlaylists(category, getCategoryPlaylists(category.id, allPages));
+                    } catch (HttpRequestSpotifyApiException | RuntimeException e) {
+                        listener.onError(category, String.valueOf(e.getMessage()));
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(fetches.toArray(new CompletableFuture<?>[0])).join();
+            return categories;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private String getCategoryId(String categoryName, boolean allPages) throws HttpRequestSpotifyApiException {
+        String categoryId = categoryIndex.getId(categoryName);
+        if (categoryId == null) {
+            // Unknown name: refresh the index from the categories list before giving up
+            getCategoriesList(allPages);
+            categoryId = categoryIndex.getId(categoryName);
+        }
+        if (categoryId == null) {
+            throw new UnknownCategoryException("Specified id doesn't exist");
+        }
+        return categoryId;
+    }
+
+    private <T> ResultsPageSource getResultsPageSource(String apiResource, SpotifyApiResponseParser<Page<T>> pageParser,
+                                                       Function<String, String> errorMessageParser) {
+        return new ApiResultsPageSource<>(offset -> getCachedSpotifyApiResourceAsync(pagedResource(apiResource, offset, maxPageLimit), pageParser, errorMessageParser),
+                maxPageLimit);
+    }
+
+    public ResultsPageSource getCategoriesPageSource() {
+        return getResultsPageSource("/v1/browse/categories",
+                reader -> {
+                    Page<Category> page = SpotifyResponseParsers.readPage(reader, "categories", SpotifyResponseParsers::readCategory);
+                    categoryIndex.update(page.items);
+                    return page;
+                },
+                body -> "There was an issue getting the categories. See error message: " + body);
+    }
+
+    public ResultsPageSource getFeaturedPlaylistsPageSource() {
+        return getResultsPageSource("/v1/browse/featured-playlists",
+                reader -> SpotifyResponseParsers.readPage(reader, "playlists", SpotifyResponseParsers::readPlaylist),
+                body -> "There was an issue getting the featured playlists. See error message: " + body);
+    }
+
+    public ResultsPageSource getNewReleasesPageSource() {
+        return getResultsPageSource("/v1/browse/new-releases",
+                reader -> SpotifyResponseParsers.readPage(reader, "albums", SpotifyResponseParsers::readAlbum),
+                body -> "There was an issue getting the new releases. See error message: " + body);
+    }
+
+    public ResultsPageSource getPlaylistsPageSource(String categoryName) throws HttpRequestSpotifyApiException {
+        String categoryId = getCategoryId(categoryName, false);
+
+        return getResultsPageSource("/v1/browse/categories/" + categoryId + "/playlists",
+                reader -> SpotifyResponseParsers.readPage(reader, "playlists", SpotifyResponseParsers::readPlaylist),
+                this::getErrorMessage);
+    }
+
+    /**
+     * Searches the categories, playlists and albums fetched so far, without a request.
+     */
+    public List<Object> search(String query) {
+        catalogWarmUp.join();
+        return searchIndex.search(query, maxSearchResults);
+    }
+
+    /**
+     * The artists most often on the same new releases as the artist named artistName, and their albums, or
+     * null when no new release has that artist. The new releases are fetched first if none were yet.
+     */
+    public ArtistGraph.Recommendations getSimilarArtists(String artistName, boolean allPages) throws HttpRequestSpotifyApiException {
+        catalogWarmUp.join();
+        if (artistGraph.size() == 0) {
+            getNewReleases(allPages);
+        }
+        return artistGraph.getRecommendations(artistName, maxSimilarResults);
+    }
+
+    private String getErrorMessage(String errorBody) {
+        try {
+            return JsonParser.parseString(errorBody).getAsJsonObject().get("error").getAsJsonObject().get("message").getAsString();
+        } catch (RuntimeException e) {
+            return errorBody;
+        }
+    }
+
+    public String getCacheStats() {
+        return cache.getStatsSummary();
+    }
+
+    public String getSchedulerStats() {
+        return requestScheduler.getStatsSummary();
+    }
+
+    public String getStats() {
+        return metrics.getSummary() + "\n" + cache.getStatsSummary() + "\n" + requestScheduler.getStatsSummary()
+                + "\n" + searchIndex.getStatsSummary() + "\n" + artistGraph.getStatsSummary();
+    }
+
+    /**
+     * Rewrites statsFile with the current stats every interval, until the process ends.
+     */
+    synchronized void startStatsDump(Path statsFile, Duration interval) {
+        if (statsDumpScheduler != null) {
+            statsDumpScheduler.shutdownNow();
+        }
+        statsDumpScheduler = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("spotify-stats-dump"));
+        statsDumpScheduler.scheduleAtFixedRate(() -> {
+            try {
+                Path temporaryFile = statsFile.toAbsolutePath().resolveSibling(statsFile.getFileName() + ".tmp");
+                Files.writeString(temporaryFile, getStats() + "\n", StandardCharsets.UTF_8);
+                Files.move(temporaryFile, statsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                System.err.println("There was a problem writing the stats file: " + e.getMessage());
+            }
+        }, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Maps the catalog snapshot saved by a previous process, and answers the commands from it until it is
+     * reconciled with the API. Only the header and the listing keys are read here; the search index and
+     * the artist graph are filled from the snapshot in the background, and search and similar wait for that.
+     */
+    void restoreCatalog() {
+        if (catalogFile == null) {
+            return;
+        }
+        try {
+            warmStart = CatalogSnapshot.load(catalogFile);
+        } catch (IOException | RuntimeException e) {
+            messages.println("There was a problem reading the catalog snapshot: " + e.getMessage());
+            return;
+        }
+        reconcileCatalog();
+    }
+
+    /**
+     * Makes the listings of the snapshot searchable and their artists similar, as if they had just been
+     * fetched, and keeps them for the next snapshot where nothing newer was fetched meanwhile.
+     */
+    private void warmUpCatalog(CatalogSnapshot snapshot) throws InterruptedException {
+        // A snapshot only holds the listings fetched before it was saved, so any of them can be missing
+        List<Album> savedNewReleases = snapshot.getNewReleases();
+        if (savedNewReleases != null) {
+            artistGraph.addAll(savedNewReleases, Runtime.getRuntime().availableProcessors());
+        }
+        indexSavedListing(snapshot.getCategories());
+        indexSavedListing(snapshot.getFeaturedPlaylists());
+        indexSavedListing(savedNewReleases);
+        for (String categoryId : snapshot.getPlaylistsCategoryIds()) {
+            indexSavedListing(snapshot.getPlaylists(categoryId));
+        }
+        catalog.addAll(snapshot);
+    }
+
+    private void indexSavedListing(List<?> listing) {
+        if (listing != null) {
+            searchIndex.addAll(listing);
+        }
+    }
+
+    private CatalogSnapshot getWarmStart(boolean allPages) {
+        CatalogSnapshot snapshot = warmStart;
+        return (snapshot != null && snapshot.allPages == allPages) ? snapshot : null;
+    }
+
+    /**
+     * Warms up from the snapshot on a background thread, the first time, and once the application is
+     * authorized refetches every listing of the snapshot, then stops answering from it and saves the fresh
+     * listings. A listing that fails keeps its saved copy.
+     */
+    private synchronized void reconcileCatalog() {
+        CatalogSnapshot snapshot = warmStart;
+        if (snapshot == null || reconcilingCatalog) {
+            return;
+        }
+        reconcilingCatalog = true;
+        CompletableFuture<Void> warmUp = catalogWarmedUp ? null : new CompletableFuture<>();
+        if (warmUp != null) {
+            catalogWarmedUp = true;
+            catalogWarmUp = warmUp;
+        }
+
+        daemonThreadFactory("spotify-catalog-reconcile").newThread(() -> {
+            if (warmUp != null) {
+                try {
+                    warmUpCatalog(snapshot);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException e) {
+                    messages.println("There was a problem reading the catalog snapshot: " + e.getMessage());
+                    warmStart = null;
+                } finally {
+                    warmUp.complete(null);
+                }
+            }
+            synchronized (this) {
+                // getToken starts the reconciliation again once the application is authorized
+                if (! authorized || warmStart == null) {
+                    reconcilingCatalog = false;
+                    return;
+                }
+            }
+
+            try {
+                reconcileListing(() -> fetchCategories(snapshot.allPages));
+                reconcileListing(() -> fetchFeaturedPlaylists(snapshot.allPages));
+                reconcileListing(() -> fetchNewReleases(snapshot.allPages));
+                for (String categoryId : snapshot.getPlaylistsCategoryIds()) {
+                    reconcileListing(() -> getCategoryPlaylists(categoryId, snapshot.allPages));
+                }
+                warmStart = null;
+                saveCatalog();
+            } finally {
+                synchronized (this) {
+                    reconcilingCatalog = false;
+                }
+            }
+        }).start();
+    }
+
+    private interface CatalogListingFetch {
+        void fetch() throws HttpRequestSpotifyApiException;
+    }
+
+    private static void reconcileListing(CatalogListingFetch listingFetch) {
+        try {
+            listingFetch.fetch();
+        } catch (HttpRequestSpotifyApiException | RuntimeException e) {
+            // Keep the saved listing
+        }
+    }
+
+    /**
+     * Keeps a fetched listing for the next catalog snapshot, in the models that save one.
+     */
+    private void recordListing(Consumer<CatalogSnapshot.Builder> listingUpdate) {
+        if (catalog != null) {
+            listingUpdate.accept(catalog);
+        }
+    }
+
+    void saveCatalog() {
+        if (catalogFile == null || catalog == null) {
+            return;
+        }
+        CatalogSnapshot snapshot = warmStart;
+        if (snapshot != null) {
+            // The warm-up may not have got to the saved listings yet
+            catalog.addAll(snapshot);
+        }
+        try {
+            catalog.write(catalogFile);
+        } catch (IOException e) {
+            messages.println("There was a problem saving the catalog snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Refreshes the browse data every interval in the background and answers the commands from memory
+     * from then on. The playlists of the hotCategories most requested categories are kept warm too.
+     */
+    synchronized void startPrefetch(Duration interval, int hotCategories, boolean allPages) {
+        if (prefetcher != null) {
+            prefetcher.stop();
+        }
+        prefetcher = new SpotifyPrefetcher(this, interval, 0.1, hotCategories, allPages);
+        prefetcher.start();
+    }
+
+    /**
+     * Stops the background work (prefetching, token refresh, stats dump) and the executors behind the
+     * HTTP client, so nothing outlives the session.
+     */
+    synchronized void shutdown() {
+        saveCatalog();
+        if (prefetcher != null) {
+            prefetcher.stop();
+            prefetcher = null;
+        }
+        if (statsDumpScheduler != null) {
+            statsDumpScheduler.shutdownNow();
+        }
+        if (tokenRefreshScheduler != null) {
+            tokenRefreshScheduler.shutdownNow();
+        }
+        stopServer();
+        requestScheduler.shutdown();
+        synchronized (executorsLock) {
+            if (responseParserExecutor != null) {
+                responseParserExecutor.shutdownNow();
+            }
+            if (blockingExecutor != null) {
+                blockingExecutor.shutdownNow();
+            }
+            if (httpClientExecutor != null) {
+                httpClientExecutor.shutdownNow();
+            }
+        }
+    }
+}
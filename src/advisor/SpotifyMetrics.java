@@ -0,0 +1,147 @@
+package advisor;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Request metrics per API endpoint (network, decompression and parse time, bytes received, status codes)
+ * plus the console rendering latency. Recording is a couple of atomic increments, so it stays on in the hot path.
+ */
+class SpotifyMetrics {
+
+    private static final Pattern CATEGORY_ID = Pattern.compile("^/v1/browse/categories/[^/]+/playlists$");
+
+    /**
+     * Latency histogram with four log-scaled buckets per power of two of microseconds, so percentiles are
+     * reported within 25% of the recorded value.
+     */
+    static class LatencyHistogram {
+        private static final int SUB_BUCKETS = 4;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(62 * SUB_BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final AtomicLong maxMicros = new AtomicLong();
+
+        void record(long nanos) {
+            long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+            buckets.incrementAndGet(bucketIndex(micros));
+            count.increment();
+            maxMicros.accumulateAndGet(micros, Math::max);
+        }
+
+        long getCount() {
+            return count.sum();
+        }
+
+        long getMaxMicros() {
+            return maxMicros.get();
+        }
+
+        long getPercentileMicros(double percentile) {
+            long total = getCount();
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(bucketUpperBound(i), getMaxMicros());
+                }
+            }
+            return getMaxMicros();
+        }
+
+        String getSummary() {
+            return "p50 " + formatMillis(getPercentileMicros(50))
+                    + ", p99 " + formatMillis(getPercentileMicros(99))
+                    + ", max " + formatMillis(getMaxMicros())
+                    + " (" + getCount() + " samples)";
+        }
+
+        private static int bucketIndex(long micros) {
+            if (micros < SUB_BUCKETS) {
+                return (int) micros;
+            }
+            int octave = 63 - Long.numberOfLeadingZeros(micros);
+            int subBucket = (int) (micros >>> (octave - 2)) & (SUB_BUCKETS - 1);
+            return (octave - 1) * SUB_BUCKETS + subBucket;
+        }
+
+        private static long bucketUpperBound(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            int octave = index / SUB_BUCKETS + 1;
+            int subBucket = index % SUB_BUCKETS;
+            return ((SUB_BUCKETS + subBucket + 1L) << (octave - 2)) - 1;
+        }
+
+        private static String formatMillis(long micros) {
+            return String.format("%.1f ms", micros / 1000.0);
+        }
+    }
+
+    static class EndpointMetrics {
+        // From sending the request to its last body byte, without the time the parser held the body up
+        final LatencyHistogram networkLatency = new LatencyHistogram();
+        // Inflating gzip response bodies
+        final LatencyHistogram decodeLatency = new LatencyHistogram();
+        // Parsing alone, without the time spent inflating the body
+        final LatencyHistogram parseLatency = new LatencyHistogram();
+        // Response body bytes as sent, compressed or not
+        final LongAdder bytesReceived = new LongAdder();
+        // Response body bytes after undoing the content coding, i.e. the JSON handed to the parser
+        final LongAdder bytesDecoded = new LongAdder();
+        private final Map<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+
+        /**
+         * @param statusCode the response status, or -1 when no response was received
+         */
+        void recordStatus(int statusCode) {
+            statusCodes.computeIfAbsent(statusCode, code -> new LongAdder()).increment();
+        }
+
+        String getSummary() {
+            StringBuilder statusSummary = new StringBuilder();
+            new TreeMap<>(statusCodes).forEach((statusCode, count) -> statusSummary
+                    .append((statusSummary.length() > 0) ? ", " : "")
+                    .append((statusCode < 0) ? "failed" : String.valueOf(statusCode))
+                    .append(": ").append(count.sum()));
+
+            return "  Status codes: " + statusSummary
+                    + "\n  Network (to last byte): " + networkLatency.getSummary()
+                    + ((decodeLatency.getCount() > 0) ? "\n  Decompression: " + decodeLatency.getSummary() : "")
+                    + "\n  Parsing: " + parseLatency.getSummary()
+                    + "\n  Bytes received: " + bytesReceived.sum() + " (decoded: " + bytesDecoded.sum() + ")";
+        }
+    }
+
+    private final Map<String, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+    final LatencyHistogram renderLatency = new LatencyHistogram();
+
+    /**
+     * Metrics of the endpoint serving apiResource. Query parameters and category ids are left out, so all
+     * pages of a listing, and the playlists of every category, are counted together.
+     */
+    EndpointMetrics getEndpoint(String apiResource) {
+        int queryStart = apiResource.indexOf('?');
+        String path = (queryStart >= 0) ? apiResource.substring(0, queryStart) : apiResource;
+        String endpoint = CATEGORY_ID.matcher(path).matches() ? "/v1/browse/categories/{id}/playlists" : path;
+        return endpoints.computeIfAbsent(endpoint, key -> new EndpointMetrics());
+    }
+
+    String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        new TreeMap<>(endpoints).forEach((endpoint, metrics) -> summary.append(endpoint).append('\n').append(metrics.getSummary()).append('\n'));
+        summary.append("Rendering: ").append(renderLatency.getSummary());
+        return summary.toString();
+    }
+}
@@ -0,0 +1,156 @@
+package advisor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the browse data warm: categories, featured playlists, new releases and the playlists of the most
+ * requested categories are refetched in the background every interval (plus or minus the jitter, so
+ * several processes don't refresh in lockstep). Each result replaces the previous one as a whole, and the
+ * model serves commands from these snapshots while they exist. A failed refresh keeps the last snapshot.
+ * Category popularity only counts names that resolved to a category, and the counts are halved on every
+ * refresh, so it follows what is requested lately and forgets categories nobody asks for any more.
+ */
+class SpotifyPrefetcher {
+
+    private final SpotifyClientModel model;
+    private final Duration interval;
+    private final double jitter;
+    private final int hotCategories;
+    final boolean allPages;
+
+    private final ScheduledExecutorService refreshScheduler =
+            Executors.newSingleThreadScheduledExecutor(SpotifyClientModel.daemonThreadFactory("spotify-prefetcher"));
+
+    private volatile List<Category> categories;
+    private volatile List<Playlist> featuredPlaylists;
+    private volatile List<Album> newReleases;
+    private final Map<String, List<Playlist>> playlistsByCategory = new ConcurrentHashMap<>();
+    private final Map<String, Long> playlistsRequests = new ConcurrentHashMap<>();
+
+    /**
+     * @param jitter fraction of the interval each refresh is moved by at random, e.g. 0.1 for up to 10%
+     * @param hotCategories how many of the most requested categories get their playlists prefetched
+     */
+    SpotifyPrefetcher(SpotifyClientModel model, Duration interval, double jitter, int hotCategories, boolean allPages) {
+        this.model = model;
+        this.interval = interval;
+        this.jitter = jitter;
+        this.hotCategories = hotCategories;
+        this.allPages = allPages;
+    }
+
+    void start() {
+        scheduleRefresh(0);
+    }
+
+    /**
+     * Refreshes once more right away, e.g. after the user authorized, keeping the regular schedule.
+     */
+    void refreshNow() {
+        if (! refreshScheduler.isShutdown()) {
+            refreshScheduler.execute(this::refresh);
+        }
+    }
+
+    void stop() {
+        refreshScheduler.shutdownNow();
+    }
+
+    private void scheduleRefresh(long delayMillis) {
+        if (refreshScheduler.isShutdown()) {
+            return;
+        }
+        refreshScheduler.schedule(() -> {
+            try {
+                refresh();
+            } finally {
+                long jitterMillis = (long) (interval.toMillis() * jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1));
+                scheduleRefresh(Math.max(0, interval.toMillis() + jitterMillis));
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void refresh() {
+        if (! model.authorized) {
+            return;
+        }
+
+        // Let the cache revalidate what it holds instead of answering from it
+        model.cache.expire("/v1/browse/");
+        try {
+            categories = model.fetchCategories(allPages);
+        } catch (HttpRequestSpotifyApiException | RuntimeException e) {
+            // Keep serving the previous snapshot
+        }
+        try {
+            featuredPlaylists = model.fetchFeaturedPlaylists(allPages);
+        } catch (HttpRequestSpotifyApiException | RuntimeException e) {
+            // Keep serving the previous snapshot
+        }
+        try {
+            newReleases = model.fetchNewReleases(allPages);
+        } catch (HttpRequestSpotifyApiException | RuntimeException e) {
+            // Keep serving the previous snapshot
+        }
+        List<String> hot = getHotCategories();
+        playlistsByCategory.keySet().retainAll(hot);
+        for (String categoryName : hot) {
+            try {
+                playlistsByCategory.put(categoryName, model.fetchPlaylists(categoryName, allPages));
+            } catch (HttpRequestSpotifyApiException | RuntimeException e) {
+                // Keep serving the previous snapshot
+            }
+        }
+
+        playlistsRequests.replaceAll((categoryName, count) -> count / 2);
+        playlistsRequests.values().removeIf(count -> count == 0);
+    }
+
+    private List<String> getHotCategories() {
+        List<Map.Entry<String, Long>> requests = new ArrayList<>(playlistsRequests.entrySet());
+        requests.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+
+        List<String> hot = new ArrayList<>();
+        for (Map.Entry<String, Long> request : requests.subList(0, Math.min(hotCategories, requests.size()))) {
+            hot.add(request.getKey());
+        }
+        return hot;
+    }
+
+    List<Category> getCategories() {
+        return categories;
+    }
+
+    List<Playlist> getFeaturedPlaylists() {
+        return featuredPlaylists;
+    }
+
+    List<Album> getNewReleases() {
+        return newReleases;
+    }
+
+    List<Playlist> getPlaylists(String categoryName) {
+        return playlistsByCategory.get(normalize(categoryName));
+    }
+
+    /**
+     * Counts a request for the playlists of a category towards its popularity. Called once the name is known
+     * to resolve to a category.
+     */
+    void recordPlaylistsRequest(String categoryName) {
+        playlistsRequests.merge(normalize(categoryName), 1L, Long::sum);
+    }
+
+    private static String normalize(String categoryName) {
+        return categoryName.trim().toLowerCase(Locale.ROOT);
+    }
+}
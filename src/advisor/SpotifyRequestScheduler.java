@@ -0,0 +1,200 @@
+package advisor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Sits in front of the HTTP layer and keeps the advisor within the API rate limits. Requests are paced
+ * by a token bucket, a 429 answer pauses every request for the Retry-After time before the throttled one
+ * is resent, and concurrent requests for the same resource share a single in-flight call.
+ */
+class SpotifyRequestScheduler {
+
+    private static final long DEFAULT_RETRY_AFTER_MILLIS = 1000;
+
+    private final double permitsPerNano;
+    private final double burstPermits;
+    private final int maxRetries;
+
+    private double availablePermits;
+    private long lastRefillNanos = System.nanoTime();
+    private long pausedUntilNanos = lastRefillNanos;
+
+    private final ScheduledExecutorService delayedRequests =
+            Executors.newSingleThreadScheduledExecutor(SpotifyClientModel.daemonThreadFactory("spotify-request-scheduler"));
+    private final Map<String, CompletableFuture<?>> inFlightRequests = new ConcurrentHashMap<>();
+
+    // Results of the requests waiting for a permit or a retry, failed on shutdown so no caller waits forever
+    private final Set<CompletableFuture<?>> queuedResults = ConcurrentHashMap.newKeySet();
+    private final LongAdder throttledResponses = new LongAdder();
+    private final LongAdder coalescedRequests = new LongAdder();
+
+    SpotifyRequestScheduler(double requestsPerSecond, int burstRequests, int maxRetries) {
+        this.permitsPerNano = requestsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burstPermits = burstRequests;
+        this.maxRetries = maxRetries;
+        this.availablePermits = burstRequests;
+    }
+
+    /**
+     * Returns the in-flight call for key when there is one, otherwise starts a new call and shares it
+     * until it completes.
+     */
+    @SuppressWarnings("unchecked")
+    <T> CompletableFuture<T> coalesce(String key, Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<T> sharedResult = new CompletableFuture<>();
+        CompletableFuture<?> inFlightResult = inFlightRequests.putIfAbsent(key, sharedResult);
+        if (inFlightResult != null) {
+            coalescedRequests.increment();
+            return (CompletableFuture<T>) inFlightResult;
+        }
+
+        try {
+            call.get().whenComplete((result, e) -> {
+                inFlightRequests.remove(key, sharedResult);
+                if (e != null) {
+                    sharedResult.completeExceptionally(e);
+                } else {
+                    sharedResult.complete(result);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlightRequests.remove(key, sharedResult);
+            sharedResult.completeExceptionally(e);
+        }
+        return sharedResult;
+    }
+
+    /**
+     * Sends the request once the rate limit allows it. A 429 answer is retried up to maxRetries times,
+     * after the delay the server asked for in Retry-After.
+     */
+    <T> CompletableFuture<HttpResponse<T>> schedule(Supplier<CompletableFuture<HttpResponse<T>>> request) {
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        schedule(request, 0, result);
+        return result;
+    }
+
+    private <T> void schedule(Supplier<CompletableFuture<HttpResponse<T>>> request, int attempt, CompletableFuture<HttpResponse<T>> result) {
+        Runnable dispatch = () -> {
+            try {
+                request.get().whenComplete((response, e) -> {
+                    if (e != null) {
+                        result.completeExceptionally(e);
+                    } else if (response != null && response.statusCode() == 429 && attempt < maxRetries) {
+                        throttledResponses.increment();
+                        pause(getRetryAfterMillis(response, attempt));
+                        discardBody(response);
+                        schedule(request, attempt + 1, result);
+                    } else {
+                        result.complete(response);
+                    }
+                });
+            } catch (RuntimeException e) {
+                // Thrown on a delayed dispatch, this would only reach the executor, which drops it
+                result.completeExceptionally(e);
+            }
+        };
+
+        long delayNanos = reservePermit();
+        if (delayNanos <= 0) {
+            dispatch.run();
+            return;
+        }
+        queuedResults.add(result);
+        try {
+            delayedRequests.schedule(() -> {
+                // Not queued anymore when shutdown already failed the result
+                if (queuedResults.remove(result)) {
+                    dispatch.run();
+                }
+            }, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            queuedResults.remove(result);
+            result.completeExceptionally(notSent());
+        }
+    }
+
+    /**
+     * Takes one permit from the bucket, going into debt when it is empty, and returns how long the caller
+     * has to wait before that permit (and any pause requested by the server) is honoured.
+     */
+    private synchronized long reservePermit() {
+        long now = System.nanoTime();
+        availablePermits = Math.min(burstPermits, availablePermits + (now - lastRefillNanos) * permitsPerNano);
+        lastRefillNanos = now;
+
+        availablePermits -= 1;
+        long permitDelayNanos = (availablePermits >= 0) ? 0 : (long) (-availablePermits / permitsPerNano);
+        return Math.max(permitDelayNanos, pausedUntilNanos - now);
+    }
+
+    private synchronized void pause(long pauseMillis) {
+        pausedUntilNanos = Math.max(pausedUntilNanos, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pauseMillis));
+    }
+
+    private static long getRetryAfterMillis(HttpResponse<?> response, int attempt) {
+        String retryAfter = response.headers().firstValue("Retry-After").orElse("");
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException e) {
+            // Missing or given as a date: back off exponentially instead
+            return DEFAULT_RETRY_AFTER_MILLIS << attempt;
+        }
+    }
+
+    private static void discardBody(HttpResponse<?> response) {
+        if (response.body() instanceof Closeable) {
+            try {
+                ((Closeable) response.body()).close();
+            } catch (IOException e) {
+                // The throttled answer is not used
+            }
+        }
+    }
+
+    /**
+     * Drops the requests still waiting for a permit or a retry, failing their results.
+     */
+    void shutdown() {
+        delayedRequests.shutdownNow();
+        for (CompletableFuture<?> result : queuedResults) {
+            if (queuedResults.remove(result)) {
+                result.completeExceptionally(notSent());
+            }
+        }
+    }
+
+    private static HttpRequestSpotifyApiException notSent() {
+        return new HttpRequestSpotifyApiException("The request was not sent: the request scheduler is shut down");
+    }
+
+    int getQueuedRequests() {
+        return queuedResults.size();
+    }
+
+    long getThrottledResponses() {
+        return throttledResponses.sum();
+    }
+
+    long getCoalescedRequests() {
+        return coalescedRequests.sum();
+    }
+
+    String getStatsSummary() {
+        return "Queued requests: " + getQueuedRequests()
+                + "\nThrottled responses (429): " + getThrottledResponses()
+                + "\nCoalesced requests: " + getCoalescedRequests();
+    }
+}
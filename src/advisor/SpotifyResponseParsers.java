@@ -0,0 +1,209 @@
+package advisor;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Streaming readers for the Spotify browse responses. They pull only the fields the advisor shows
+ * (names, ids, artists and external urls) straight off the response stream and skip everything else,
+ * instead of building a full JSON tree per response.
+ */
+class SpotifyResponseParsers {
+
+    interface JsonItemReader<T> {
+        T read(JsonReader reader) throws IOException;
+    }
+
+    private SpotifyResponseParsers() {
+    }
+
+    /**
+     * Reads the paging object stored under pagingObjectName. A response carrying an error object instead
+     * is reported with the error message the API sent.
+     */
+    static <T> Page<T> readPage(JsonReader reader, String pagingObjectName, JsonItemReader<T> itemReader)
+            throws IOException, HttpRequestSpotifyApiException {
+        Page<T> page = null;
+        String errorMessage = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals(pagingObjectName)) {
+                page = readPagingObject(reader, itemReader);
+            } else if (name.equals("error")) {
+                errorMessage = readErrorMessage(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (page == null) {
+            throw new HttpRequestSpotifyApiException((errorMessage != null) ? errorMessage : "Response has no " + pagingObjectName);
+        }
+        return page;
+    }
+
+    private static <T> Page<T> readPagingObject(JsonReader reader, JsonItemReader<T> itemReader) throws IOException {
+        List<T> items = new ArrayList<>();
+        int offset = 0;
+        int limit = -1;
+        int total = -1;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+            } else if (name.equals("items")) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    // The API occasionally sends null entries in place of removed items
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                    } else {
+                        items.add(itemReader.read(reader));
+                    }
+                }
+                reader.endArray();
+            } else if (name.equals("offset")) {
+                offset = reader.nextInt();
+            } else if (name.equals("limit")) {
+                limit = reader.nextInt();
+            } else if (name.equals("total")) {
+                total = reader.nextInt();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new Page<>(Collections.unmodifiableList(items), offset,
+                (limit >= 0) ? limit : items.size(), (total >= 0) ? total : offset + items.size());
+    }
+
+    static Category readCategory(JsonReader reader) throws IOException {
+        String categoryName = null;
+        String categoryId = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("name")) {
+                categoryName = reader.nextString();
+            } else if (name.equals("id")) {
+                categoryId = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new Category(categoryId, categoryName);
+    }
+
+    static Playlist readPlaylist(JsonReader reader) throws IOException {
+        String playlistName = null;
+        String playlistUrl = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("name")) {
+                playlistName = reader.nextString();
+            } else if (name.equals("external_urls")) {
+                playlistUrl = readSpotifyUrl(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new Playlist(playlistName, SpotifyUrl.of(playlistUrl));
+    }
+
+    static Album readAlbum(JsonReader reader) throws IOException {
+        String albumName = null;
+        List<Artist> albumArtists = new ArrayList<>();
+        String albumUrl = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("name")) {
+                albumName = reader.nextString();
+            } else if (name.equals("artists")) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    albumArtists.add(readArtist(reader));
+                }
+                reader.endArray();
+            } else if (name.equals("external_urls")) {
+                albumUrl = readSpotifyUrl(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new Album(albumName, albumArtists, SpotifyUrl.of(albumUrl));
+    }
+
+    private static Artist readArtist(JsonReader reader) throws IOException {
+        String artistName = null;
+        String artistId = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("name")) {
+                artistName = reader.nextString();
+            } else if (name.equals("id")) {
+                artistId = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return Artist.of(artistId, artistName);
+    }
+
+    private static String readSpotifyUrl(JsonReader reader) throws IOException {
+        String url = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("spotify")) {
+                url = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return url;
+    }
+
+    private static String readErrorMessage(JsonReader reader) throws IOException {
+        String message = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("message")) {
+                message = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return message;
+    }
+}
@@ -0,0 +1,47 @@
+package advisor;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Token set granted by the accounts service: the access token, the refresh token used to renew it,
+ * the granted scope and the moment the access token expires.
+ */
+class SpotifyToken {
+
+    final String accessToken;
+    final String refreshToken;
+    final String scope;
+    final long expiresAtMillis;
+
+    SpotifyToken(String accessToken, String refreshToken, String scope, long expiresAtMillis) {
+        this.accessToken = accessToken;
+        this.refreshToken = refreshToken;
+        this.scope = scope;
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    /**
+     * Builds the token set from an /api/token response. Refresh responses may omit the refresh token,
+     * in which case the previous one stays valid and is kept.
+     */
+    static SpotifyToken fromTokenResponse(JsonObject tokenJson, String previousRefreshToken) {
+        if (! tokenJson.has("access_token") || tokenJson.get("access_token").isJsonNull()) {
+            throw new IllegalArgumentException("The token response has no access_token");
+        }
+        String accessToken = tokenJson.get("access_token").getAsString();
+        String refreshToken = tokenJson.has("refresh_token") ? tokenJson.get("refresh_token").getAsString() : previousRefreshToken;
+        String scope = tokenJson.has("scope") ? tokenJson.get("scope").getAsString() : "";
+        long expiresAtMillis = tokenJson.has("expires_in")
+                ? System.currentTimeMillis() + tokenJson.get("expires_in").getAsLong() * 1000
+                : Long.MAX_VALUE;
+        return new SpotifyToken(accessToken, refreshToken, scope, expiresAtMillis);
+    }
+
+    boolean isExpired() {
+        return System.currentTimeMillis() >= expiresAtMillis;
+    }
+
+    boolean canRefresh() {
+        return refreshToken != null && ! refreshToken.isEmpty();
+    }
+}
@@ -0,0 +1,64 @@
+package advisor;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+
+/**
+ * Keeps the token set in a local file so a new process can reuse it instead of going through the
+ * browser authorization again. The file is readable by its owner only, where the file system allows it.
+ */
+class SpotifyTokenStore {
+
+    private final Path tokenFile;
+
+    SpotifyTokenStore(Path tokenFile) {
+        this.tokenFile = tokenFile;
+    }
+
+    SpotifyToken load() throws IOException {
+        if (! Files.exists(tokenFile)) {
+            return null;
+        }
+
+        JsonObject tokenJson = JsonParser.parseString(Files.readString(tokenFile, StandardCharsets.UTF_8)).getAsJsonObject();
+        if (! tokenJson.has("access_token")) {
+            return null;
+        }
+        return new SpotifyToken(
+                tokenJson.get("access_token").getAsString(),
+                tokenJson.has("refresh_token") ? tokenJson.get("refresh_token").getAsString() : null,
+                tokenJson.has("scope") ? tokenJson.get("scope").getAsString() : "",
+                tokenJson.has("expires_at") ? tokenJson.get("expires_at").getAsLong() : 0);
+    }
+
+    void save(SpotifyToken token) throws IOException {
+        JsonObject tokenJson = new JsonObject();
+        tokenJson.addProperty("access_token", token.accessToken);
+        if (token.refreshToken != null) {
+            tokenJson.addProperty("refresh_token", token.refreshToken);
+        }
+        tokenJson.addProperty("scope", token.scope);
+        tokenJson.addProperty("expires_at", token.expiresAtMillis);
+
+        Path directory = tokenFile.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        // The file is created owner-only, so the refresh token is never readable by others, not even briefly
+        Path temporaryFile = directory.getFileSystem().supportedFileAttributeViews().contains("posix")
+                ? Files.createTempFile(directory, tokenFile.getFileName().toString(), ".tmp",
+                        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")))
+                : Files.createTempFile(directory, tokenFile.getFileName().toString(), ".tmp");
+        try {
+            Files.writeString(temporaryFile, tokenJson.toString(), StandardCharsets.UTF_8);
+            Files.move(temporaryFile, tokenFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package advisor;
+
+import java.util.Objects;
+
+/**
+ * A Spotify url split at its last slash. The prefix ("https://open.spotify.com/playlist/" and the like)
+ * is shared by every url of the same kind, so each url only holds its own id. Prefixes are interned
+ * weakly, so the ones no url uses anymore do not stay in memory.
+ */
+final class SpotifyUrl {
+
+    private static final WeakInterner<String> PREFIXES = new WeakInterner<>();
+
+    final String prefix;
+    final String id;
+
+    private SpotifyUrl(String prefix, String id) {
+        this.prefix = prefix;
+        this.id = id;
+    }
+
+    static SpotifyUrl of(String url) {
+        if (url == null) {
+            return null;
+        }
+        int idStart = url.lastIndexOf('/') + 1;
+        return of(url.substring(0, idStart), url.substring(idStart));
+    }
+
+    static SpotifyUrl of(String prefix, String id) {
+        return new SpotifyUrl(PREFIXES.intern(prefix), id);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (! (other instanceof SpotifyUrl)) {
+            return false;
+        }
+        SpotifyUrl url = (SpotifyUrl) other;
+        return prefix.equals(url.prefix) && id.equals(url.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(prefix, id);
+    }
+
+    @Override
+    public String toString() {
+        return prefix + id;
+    }
+}
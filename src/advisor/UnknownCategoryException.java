@@ -0,0 +1,14 @@
+package advisor;
+
+/**
+ * No category has the requested name, even after refreshing the categories: the caller's mistake rather
+ * than a failed request.
+ */
+class UnknownCategoryException extends HttpRequestSpotifyApiException {
+
+    private static final long serialVersionUID = 1L;
+
+    UnknownCategoryException(String errorMessage) {
+        super(errorMessage);
+    }
+}
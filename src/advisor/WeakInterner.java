@@ -0,0 +1,24 @@
+package advisor;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Hands out one shared instance per distinct value, like String.intern, without keeping values alive:
+ * once nothing else references an instance it is collected and its entry goes away.
+ */
+class WeakInterner<T> {
+
+    private final Map<T, WeakReference<T>> instances = new WeakHashMap<>();
+
+    synchronized T intern(T value) {
+        WeakReference<T> sharedReference = instances.get(value);
+        T shared = (sharedReference != null) ? sharedReference.get() : null;
+        if (shared != null) {
+            return shared;
+        }
+        instances.put(value, new WeakReference<>(value));
+        return value;
+    }
+}